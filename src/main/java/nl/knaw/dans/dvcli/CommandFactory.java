@@ -0,0 +1,157 @@
+/*
+ * Copyright (C) 2026 DANS - Data Archiving and Networked Services (info@dans.knaw.nl)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.knaw.dans.dvcli;
+
+import lombok.extern.slf4j.Slf4j;
+import nl.knaw.dans.dvcli.command.BannerAdd;
+import nl.knaw.dans.dvcli.command.BannerDelete;
+import nl.knaw.dans.dvcli.command.BannerList;
+import nl.knaw.dans.dvcli.command.Batch;
+import nl.knaw.dans.dvcli.command.Daemon;
+import nl.knaw.dans.dvcli.command.DatafilesGetPublished;
+import nl.knaw.dans.dvcli.command.DatasetArchiveVersion;
+import nl.knaw.dans.dvcli.command.DatasetDeleteStorageDriver;
+import nl.knaw.dans.dvcli.command.DatasetDirectUpload;
+import nl.knaw.dans.dvcli.command.DatasetGetStorageDriver;
+import nl.knaw.dans.dvcli.command.DatasetLockAdd;
+import nl.knaw.dans.dvcli.command.DatasetLockDelete;
+import nl.knaw.dans.dvcli.command.DatasetLockList;
+import nl.knaw.dans.dvcli.command.DatasetLocksReport;
+import nl.knaw.dans.dvcli.command.DatasetSetStorageDriver;
+import nl.knaw.dans.dvcli.command.DatasetsDeleteStorageDriver;
+import nl.knaw.dans.dvcli.command.DatasetsGetPublished;
+import nl.knaw.dans.dvcli.command.DatasetsGetStorageDriver;
+import nl.knaw.dans.dvcli.command.DatasetsGetStorageSize;
+import nl.knaw.dans.dvcli.command.DatasetsLockAdd;
+import nl.knaw.dans.dvcli.command.DatasetsLockDelete;
+import nl.knaw.dans.dvcli.command.DatasetsLockList;
+import nl.knaw.dans.dvcli.command.DatasetsSetStorageDriver;
+import nl.knaw.dans.dvcli.command.DataversesCollectStorageUsage;
+import nl.knaw.dans.dvcli.command.NotificationsTruncate;
+import nl.knaw.dans.dvcli.command.PooledDatabase;
+import nl.knaw.dans.dvcli.command.Shell;
+import nl.knaw.dans.dvcli.command.StorageDriversList;
+import nl.knaw.dans.dvcli.command.UsersImport;
+import nl.knaw.dans.dvcli.config.DdDvCliConfig;
+import nl.knaw.dans.lib.dataverse.DataverseClient;
+import picocli.CommandLine;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Supplier;
+
+/**
+ * Creates the dv subcommands when picocli needs them. Subcommands are registered by class, so picocli only instantiates the subcommand that is selected on the
+ * command line; the Dataverse client is built when the first command that needs it is instantiated, and then shared. As a result, dv --help and commands that only
+ * use the database do not pay for unused wiring. The same holds for the pool of database connections, which is shared by all commands that query the database.
+ */
+@Slf4j
+public class CommandFactory implements CommandLine.IFactory {
+    private final DdDvCliConfig config;
+    private final Map<Class<?>, Supplier<Object>> constructors = new LinkedHashMap<>();
+    private final Map<Class<?>, Supplier<Object>> sessionConstructors = new LinkedHashMap<>();
+    private DataverseClient dataverseClient;
+    private PooledDatabase database;
+
+    public CommandFactory(DdDvCliConfig config) {
+        this.config = config;
+        constructors.put(BannerList.class, () -> new BannerList(client().admin()));
+        constructors.put(BannerAdd.class, () -> new BannerAdd(client().admin()));
+        constructors.put(BannerDelete.class, () -> new BannerDelete(client().admin()));
+        constructors.put(DatasetLockAdd.class, () -> new DatasetLockAdd(client()));
+        constructors.put(DatasetLockDelete.class, () -> new DatasetLockDelete(client()));
+        constructors.put(DatasetLockList.class, () -> new DatasetLockList(client()));
+        constructors.put(DatasetsLockAdd.class, () -> new DatasetsLockAdd(client(), database()));
+        constructors.put(DatasetsLockDelete.class, () -> new DatasetsLockDelete(client(), database()));
+        constructors.put(DatasetsLockList.class, () -> new DatasetsLockList(client(), database()));
+        constructors.put(DatasetLocksReport.class, () -> new DatasetLocksReport(database()));
+        constructors.put(DatasetDeleteStorageDriver.class, () -> new DatasetDeleteStorageDriver(client()));
+        constructors.put(DatasetGetStorageDriver.class, () -> new DatasetGetStorageDriver(client()));
+        constructors.put(DatasetSetStorageDriver.class, () -> new DatasetSetStorageDriver(client()));
+        constructors.put(DatasetsDeleteStorageDriver.class, () -> new DatasetsDeleteStorageDriver(client(), database()));
+        constructors.put(DatasetsGetStorageDriver.class, () -> new DatasetsGetStorageDriver(client(), database()));
+        constructors.put(DatasetsSetStorageDriver.class, () -> new DatasetsSetStorageDriver(client(), database()));
+        constructors.put(DatasetDirectUpload.class, () -> new DatasetDirectUpload(client(), config.getExternalBaseUrl(), config.getApi().getApiKey()));
+        constructors.put(StorageDriversList.class, () -> new StorageDriversList(client().admin()));
+        constructors.put(NotificationsTruncate.class, () -> new NotificationsTruncate(database()));
+        constructors.put(DatasetsGetPublished.class, () -> new DatasetsGetPublished(database()));
+        constructors.put(DatafilesGetPublished.class, () -> new DatafilesGetPublished(database()));
+        constructors.put(DatasetsGetStorageSize.class, () -> new DatasetsGetStorageSize(client(), database()));
+        constructors.put(DataversesCollectStorageUsage.class, () -> new DataversesCollectStorageUsage(client(), database(), config.getApi().getBaseUrl()));
+        constructors.put(DatasetArchiveVersion.class, () -> new DatasetArchiveVersion(client(), database(), config.getArchivalCopy()));
+        constructors.put(UsersImport.class, () -> new UsersImport(client(), database()));
+
+        // The shell, batch and daemon commands execute each line or request on a new command line, created by this factory, so that the client is shared
+        sessionConstructors.put(Shell.class, () -> new Shell(this::newSessionCommandLine));
+        sessionConstructors.put(Batch.class, () -> new Batch(this::newSessionCommandLine));
+        sessionConstructors.put(Daemon.class, () -> new Daemon(this::newSessionCommandLine));
+    }
+
+    /**
+     * Adds all subcommands to the top-level command line.
+     *
+     * @param commandLine the command line of the dv command
+     */
+    public void addSubcommands(CommandLine commandLine) {
+        addSubcommands(commandLine, constructors.keySet());
+        addSubcommands(commandLine, sessionConstructors.keySet());
+    }
+
+    @Override
+    public <K> K create(Class<K> cls) throws Exception {
+        Supplier<Object> constructor = constructors.containsKey(cls) ? constructors.get(cls) : sessionConstructors.get(cls);
+        if (constructor != null) {
+            log.debug("Creating command {}", cls.getSimpleName());
+            return cls.cast(constructor.get());
+        }
+        // Argument groups, converters and other classes that picocli instantiates itself
+        return CommandLine.defaultFactory().create(cls);
+    }
+
+    private void addSubcommands(CommandLine commandLine, Set<Class<?>> commandClasses) {
+        for (Class<?> commandClass : commandClasses) {
+            commandLine.addSubcommand(new CommandLine(commandClass, this));
+        }
+    }
+
+    private CommandLine newSessionCommandLine() {
+        var commandLine = new CommandLine(new DdDvCli(), this);
+        addSubcommands(commandLine, constructors.keySet());
+        DdDvCli.registerConverters(commandLine);
+        return commandLine;
+    }
+
+    private synchronized DataverseClient client() {
+        if (dataverseClient == null) {
+            // Build the Dataverse API client using the same approach as dd-dataverse-cli
+            log.debug("Building Dataverse client");
+            dataverseClient = config.getApi().build();
+        }
+        return dataverseClient;
+    }
+
+    private synchronized PooledDatabase database() {
+        if (database == null) {
+            log.debug("Creating database connection pool");
+            var api = config.getApi();
+            database = new PooledDatabase(api.getDatabaseUrl(), api.getDatabaseUser(), api.getDatabasePassword(), api.getDatabasePool());
+            // dv, the shell and the daemon all end by exiting the JVM, so this is where the pooled connections are closed
+            Runtime.getRuntime().addShutdownHook(new Thread(database::close, "database-pool-shutdown"));
+        }
+        return database;
+    }
+}
@@ -0,0 +1,99 @@
+/*
+ * Copyright (C) 2026 DANS - Data Archiving and Networked Services (info@dans.knaw.nl)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.knaw.dans.dvcli;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.FileDescriptor;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.StandardProtocolFamily;
+import java.net.UnixDomainSocketAddress;
+import java.nio.channels.Channels;
+import java.nio.channels.SocketChannel;
+import java.nio.file.Path;
+import java.util.Arrays;
+
+/**
+ * Thin client for the dv daemon: forwards the arguments to the daemon, answers its requests for stdin and copies the output and the exit code back. It only uses JDK classes, so it
+ * starts much faster than dv itself. If the daemon cannot be reached, it exits with {@link DaemonProtocol#DAEMON_UNAVAILABLE}, so that the launcher can fall back
+ * to running the command in a JVM of its own.
+ * <p>
+ * Usage: {@code DaemonClient <socket> [ARGS...]}
+ */
+public class DaemonClient {
+
+    public static void main(String[] argv) {
+        if (argv.length < 1) {
+            System.err.println("Usage: DaemonClient <socket> [ARGS...]");
+            System.exit(2);
+        }
+        SocketChannel channel;
+        try {
+            channel = SocketChannel.open(StandardProtocolFamily.UNIX);
+            channel.connect(UnixDomainSocketAddress.of(Path.of(argv[0])));
+        }
+        catch (IOException e) {
+            System.exit(DaemonProtocol.DAEMON_UNAVAILABLE);
+            return;
+        }
+        try {
+            var out = new DataOutputStream(new BufferedOutputStream(Channels.newOutputStream(channel)));
+            var in = new DataInputStream(new BufferedInputStream(Channels.newInputStream(channel)));
+            DaemonProtocol.writeRequest(out, Path.of("").toAbsolutePath().toString(), Arrays.copyOfRange(argv, 1, argv.length));
+            System.exit(copyResponse(in, out));
+        }
+        catch (IOException e) {
+            System.err.println("Lost connection to dv daemon: " + e.getMessage());
+            System.exit(1);
+        }
+    }
+
+    private static int copyResponse(DataInputStream in, DataOutputStream out) throws IOException {
+        // Unbuffered, so that no more of stdin is consumed than the command asked for; the rest is left to the processes that follow, as with java -jar
+        var stdin = new FileInputStream(FileDescriptor.in);
+        byte[] buffer = new byte[8192];
+        while (true) {
+            int channel = in.readByte();
+            if (channel == DaemonProtocol.EXIT) {
+                System.out.flush();
+                System.err.flush();
+                return in.readInt();
+            }
+            if (channel == DaemonProtocol.STDIN) {
+                System.out.flush();
+                System.err.flush();
+                int count = stdin.read(buffer, 0, Math.min(buffer.length, in.readInt()));
+                DaemonProtocol.writeFrame(out, DaemonProtocol.STDIN, buffer, 0, Math.max(count, 0));
+                out.flush();
+                continue;
+            }
+            OutputStream target = channel == DaemonProtocol.STDERR ? System.err : System.out;
+            int remaining = in.readInt();
+            while (remaining > 0) {
+                int count = in.read(buffer, 0, Math.min(buffer.length, remaining));
+                if (count < 0) {
+                    throw new IOException("Unexpected end of response");
+                }
+                target.write(buffer, 0, count);
+                remaining -= count;
+            }
+        }
+    }
+}
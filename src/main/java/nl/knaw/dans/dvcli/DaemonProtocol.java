@@ -0,0 +1,186 @@
+/*
+ * Copyright (C) 2026 DANS - Data Archiving and Networked Services (info@dans.knaw.nl)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.knaw.dans.dvcli;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+/**
+ * The protocol between the dv daemon and its thin client, over a Unix domain socket. It only uses JDK classes, so that the client starts quickly.
+ * <p>
+ * The client sends its working directory and the arguments. The daemon sends the output of the command as frames on the stdout and stderr channels, followed by
+ * an exit frame with the exit code. A frame is a channel byte, a length and that many bytes. The exit frame is the exit channel byte and the exit code.
+ * <p>
+ * Stdin is only sent when the command reads it: the daemon then sends a stdin request, which is the stdin channel byte and the maximum number of bytes it wants,
+ * and the client answers with a stdin frame of at most that many bytes; an empty stdin frame marks the end of stdin. As a result, the client does not consume any
+ * of its stdin for commands that do not read it, or for requests that the daemon refuses.
+ */
+public final class DaemonProtocol {
+    public static final int EXIT = 0;
+    public static final int STDOUT = 1;
+    public static final int STDERR = 2;
+    public static final int STDIN = 3;
+
+    /**
+     * Exit code that tells the client that the daemon cannot run its command, so that the client can run the command in a JVM of its own.
+     */
+    public static final int DAEMON_UNAVAILABLE = 111;
+
+    private DaemonProtocol() {
+    }
+
+    public static void writeRequest(DataOutputStream out, String workingDirectory, String[] args) throws IOException {
+        out.writeUTF(workingDirectory);
+        out.writeInt(args.length);
+        for (String arg : args) {
+            out.writeUTF(arg);
+        }
+        out.flush();
+    }
+
+    public static String readWorkingDirectory(DataInputStream in) throws IOException {
+        return in.readUTF();
+    }
+
+    public static String[] readArgs(DataInputStream in) throws IOException {
+        String[] args = new String[in.readInt()];
+        for (int i = 0; i < args.length; i++) {
+            args[i] = in.readUTF();
+        }
+        return args;
+    }
+
+    /**
+     * Writes a frame on the given channel. Several threads may write frames to the same stream.
+     *
+     * @param out     the stream
+     * @param channel the channel
+     * @param b       the data
+     * @param off     the offset of the data in b
+     * @param len     the length of the data
+     * @throws IOException if writing fails
+     */
+    public static void writeFrame(DataOutputStream out, int channel, byte[] b, int off, int len) throws IOException {
+        synchronized (out) {
+            out.writeByte(channel);
+            out.writeInt(len);
+            out.write(b, off, len);
+        }
+    }
+
+    public static void writeExit(DataOutputStream out, int exitCode) throws IOException {
+        synchronized (out) {
+            out.writeByte(EXIT);
+            out.writeInt(exitCode);
+            out.flush();
+        }
+    }
+
+    /**
+     * Writes everything written to it as frames on one channel. Several frame output streams may share the same underlying stream.
+     */
+    public static class FrameOutputStream extends OutputStream {
+        private final DataOutputStream out;
+        private final int channel;
+
+        public FrameOutputStream(DataOutputStream out, int channel) {
+            this.out = out;
+            this.channel = channel;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            write(new byte[] { (byte) b }, 0, 1);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            if (len == 0) {
+                return;
+            }
+            writeFrame(out, channel, b, off, len);
+        }
+
+        @Override
+        public void flush() throws IOException {
+            synchronized (out) {
+                out.flush();
+            }
+        }
+    }
+
+    /**
+     * The stdin of a client, as seen by the daemon. Each time it needs data, it sends a stdin request to the client and reads the frame that the client answers
+     * with, up to the empty frame that marks the end of stdin.
+     */
+    public static class FrameInputStream extends InputStream {
+        private final DataInputStream in;
+        private final DataOutputStream out;
+        private int remaining;
+        private boolean eof;
+
+        public FrameInputStream(DataInputStream in, DataOutputStream out) {
+            this.in = in;
+            this.out = out;
+        }
+
+        @Override
+        public int read() throws IOException {
+            byte[] b = new byte[1];
+            return read(b, 0, 1) < 0 ? -1 : b[0] & 0xff;
+        }
+
+        @Override
+        public synchronized int read(byte[] b, int off, int len) throws IOException {
+            if (len == 0) {
+                return 0;
+            }
+            if (remaining == 0) {
+                if (eof) {
+                    return -1;
+                }
+                synchronized (out) {
+                    out.writeByte(STDIN);
+                    out.writeInt(len);
+                    out.flush();
+                }
+                try {
+                    in.readByte();
+                    remaining = in.readInt();
+                }
+                catch (EOFException e) {
+                    remaining = 0;
+                }
+                if (remaining == 0) {
+                    eof = true;
+                    return -1;
+                }
+            }
+            int count = in.read(b, off, Math.min(len, remaining));
+            if (count < 0) {
+                eof = true;
+                remaining = 0;
+                return -1;
+            }
+            remaining -= count;
+            return count;
+        }
+    }
+}
@@ -17,25 +17,8 @@
 package nl.knaw.dans.dvcli;
 
 import io.dropwizard.util.DataSize;
+import io.dropwizard.util.Duration;
 import lombok.extern.slf4j.Slf4j;
-import nl.knaw.dans.dvcli.command.BannerAdd;
-import nl.knaw.dans.dvcli.command.BannerDelete;
-import nl.knaw.dans.dvcli.command.BannerList;
-import nl.knaw.dans.dvcli.command.DatasetArchiveVersion;
-import nl.knaw.dans.dvcli.command.DatasetDeleteStorageDriver;
-import nl.knaw.dans.dvcli.command.DatasetDirectUpload;
-import nl.knaw.dans.dvcli.command.DatasetGetStorageDriver;
-import nl.knaw.dans.dvcli.command.DatasetLockAdd;
-import nl.knaw.dans.dvcli.command.DatasetLockDelete;
-import nl.knaw.dans.dvcli.command.DatasetLockList;
-import nl.knaw.dans.dvcli.command.DatasetSetStorageDriver;
-import nl.knaw.dans.dvcli.command.DatasetsGetPublished;
-import nl.knaw.dans.dvcli.command.DatasetsGetStorageSize;
-import nl.knaw.dans.dvcli.command.DatafilesGetPublished;
-import nl.knaw.dans.dvcli.command.DataversesCollectStorageUsage;
-import nl.knaw.dans.dvcli.command.NotificationsTruncate;
-import nl.knaw.dans.dvcli.command.StorageDriversList;
-import nl.knaw.dans.dvcli.command.UsersImport;
 import nl.knaw.dans.dvcli.config.DdDvCliConfig;
 import nl.knaw.dans.lib.util.PicocliVersionProvider;
 import picocli.CommandLine;
@@ -57,31 +40,15 @@ public class DdDvCli extends nl.knaw.dans.lib.util.AbstractCommandLineApp<DdDvCl
 
     @Override
     public void configureCommandLine(CommandLine commandLine, DdDvCliConfig config) {
-        // Build the Dataverse API client using the same approach as dd-dataverse-cli
-        log.debug("Building Dataverse client");
-        var dataverseClient = config.getApi().build();
-
         log.debug("Configuring command line for dv commands");
-        commandLine.addSubcommand(new BannerList(dataverseClient.admin()));
-        commandLine.addSubcommand(new BannerAdd(dataverseClient.admin()));
-        commandLine.addSubcommand(new BannerDelete(dataverseClient.admin()));
-        commandLine.addSubcommand(new DatasetLockAdd(dataverseClient));
-        commandLine.addSubcommand(new DatasetLockDelete(dataverseClient));
-        commandLine.addSubcommand(new DatasetLockList(dataverseClient));
-        commandLine.addSubcommand(new DatasetDeleteStorageDriver(dataverseClient));
-        commandLine.addSubcommand(new DatasetGetStorageDriver(dataverseClient));
-        commandLine.addSubcommand(new DatasetSetStorageDriver(dataverseClient));
-        commandLine.addSubcommand(new DatasetDirectUpload(dataverseClient, config.getExternalBaseUrl(), config.getApi().getApiKey()));
-        commandLine.addSubcommand(new StorageDriversList(dataverseClient.admin()));
-        commandLine.addSubcommand(new NotificationsTruncate(dataverseClient.database()));
-        commandLine.addSubcommand(new DatasetsGetPublished(dataverseClient.database()));
-        commandLine.addSubcommand(new DatafilesGetPublished(dataverseClient.database()));
-        commandLine.addSubcommand(new DatasetsGetStorageSize(dataverseClient.database()));
-        commandLine.addSubcommand(new DataversesCollectStorageUsage(dataverseClient));
-        commandLine.addSubcommand(new DatasetArchiveVersion(dataverseClient, dataverseClient.database(), config.getArchivalCopy()));
-        commandLine.addSubcommand(new UsersImport(dataverseClient));
+        new CommandFactory(config).addSubcommands(commandLine);
 
         // Must be called last to ensure it is available to subcommands (see JavaDoc of registerConverter)
+        registerConverters(commandLine);
+    }
+
+    static void registerConverters(CommandLine commandLine) {
         commandLine.registerConverter(DataSize.class, DataSize::parse);
+        commandLine.registerConverter(Duration.class, Duration::parse);
     }
 }
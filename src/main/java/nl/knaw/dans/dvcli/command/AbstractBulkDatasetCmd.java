@@ -0,0 +1,232 @@
+/*
+ * Copyright (C) 2026 DANS - Data Archiving and Networked Services (info@dans.knaw.nl)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.knaw.dans.dvcli.command;
+
+import lombok.Data;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import nl.knaw.dans.lib.dataverse.DatasetApi;
+import nl.knaw.dans.lib.dataverse.DataverseClient;
+import org.apache.commons.csv.CSVFormat;
+import org.apache.commons.csv.CSVPrinter;
+import picocli.CommandLine.ArgGroup;
+import picocli.CommandLine.Option;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.ResultSet;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Base class for commands that apply one API call to many datasets. The datasets are read from a file or stdin, or selected from a collection in the database.
+ * Datasets read from a file are resolved to their database ids in one query first; those that are not found are reported as NOT_FOUND without an API call. The
+ * calls are made concurrently, optionally rate limited, and the outcome per dataset is written as CSV, in the order of the input.
+ */
+@Slf4j
+@RequiredArgsConstructor
+public abstract class AbstractBulkDatasetCmd extends AbstractDatabaseCmd {
+    private static final String OK = "OK";
+    private static final String FAILED = "FAILED";
+    private static final String NOT_FOUND = "NOT_FOUND";
+
+    protected final DataverseClient dataverseClient;
+    protected final PooledDatabase dbApi;
+
+    @ArgGroup(multiplicity = "1")
+    private DatasetSelection selection;
+
+    static class DatasetSelection {
+        @Option(names = { "-i", "--input-file" }, description = "File with one PID per line, or - for stdin. Empty lines and lines starting with # are ignored")
+        String inputFile;
+
+        @Option(names = { "--collection" }, description = "Alias of a collection; selects all datasets in the collection and its subcollections")
+        String collection;
+    }
+
+    @Option(names = { "-c", "--concurrency" }, defaultValue = "1", description = "Maximum number of API calls in progress at the same time (default: 1)")
+    private int concurrency;
+
+    @Option(names = { "--max-rate" }, defaultValue = "0", description = "Maximum number of API calls started per second; 0 means no limit (default: 0)")
+    private double maxRate;
+
+    @Option(names = { "-o", "--output-file" }, defaultValue = "-", description = "CSV file to write the outcome per dataset to, or - for stdout; "
+        + "a .gz or .zst suffix compresses the output")
+    private String outputFile;
+
+    /**
+     * The operation applied to each dataset. It returns a message for the report and throws an exception if it fails.
+     */
+    @FunctionalInterface
+    protected interface DatasetOperation {
+        String apply(DatasetApi dataset) throws Exception;
+    }
+
+    @Data
+    private static class Outcome {
+        private final String pid;
+        private final String outcome;
+        private final String message;
+
+        boolean isOk() {
+            return OK.equals(outcome);
+        }
+    }
+
+    /**
+     * Applies the operation to all selected datasets and writes the outcomes.
+     *
+     * @param operation the operation
+     * @return 0 if the operation succeeded for all datasets, 1 otherwise
+     * @throws Exception if the datasets cannot be selected or the report cannot be written
+     */
+    protected Integer applyToDatasets(DatasetOperation operation) throws Exception {
+        if (concurrency < 1) {
+            System.err.println("--concurrency must be at least 1");
+            return 1;
+        }
+        List<String> pids = selection.collection != null ? fetchPidsInCollection(selection.collection) : readPids(selection.inputFile);
+        // Datasets selected from a collection exist by construction; those read from a file are looked up first
+        Map<String, Long> ids = selection.collection != null ? null : PidCodec.resolveDatasets(dbApi, pids);
+        log.info("Selected {} datasets", pids.size());
+        var rateLimiter = new RateLimiter(maxRate);
+        int failed = 0;
+        ExecutorService executor = Executors.newFixedThreadPool(concurrency);
+        try (var printer = new CSVPrinter(OutputFiles.newPrintWriter(outputFile), CSVFormat.DEFAULT.builder()
+            .setHeader("PID", "OUTCOME", "MESSAGE")
+            .get())) {
+            List<Future<Outcome>> futures = new ArrayList<>();
+            for (String pid : pids) {
+                if (ids != null && !ids.containsKey(pid)) {
+                    futures.add(CompletableFuture.completedFuture(new Outcome(pid, NOT_FOUND, "Dataset not found")));
+                    continue;
+                }
+                Long id = ids != null ? ids.get(pid) : null;
+                futures.add(executor.submit(() -> {
+                    rateLimiter.acquire();
+                    return apply(pid, id, operation);
+                }));
+            }
+            for (Future<Outcome> future : futures) {
+                Outcome outcome = Futures.get(future);
+                if (!outcome.isOk()) {
+                    failed++;
+                }
+                printer.printRecord(outcome.getPid(), outcome.getOutcome(), outcome.getMessage());
+                printer.flush();
+            }
+        }
+        finally {
+            executor.shutdownNow();
+        }
+        System.err.printf("Processed %d datasets, %d failed%n", pids.size(), failed);
+        return failed == 0 ? 0 : 1;
+    }
+
+    private Outcome apply(String pid, Long id, DatasetOperation operation) {
+        try {
+            return new Outcome(pid, OK, operation.apply(getDatasetApi(pid, id)));
+        }
+        catch (Exception e) {
+            log.error("Error processing dataset {}: {}", pid, e.getMessage());
+            return new Outcome(pid, FAILED, e.getMessage());
+        }
+    }
+
+    private DatasetApi getDatasetApi(String pid, Long id) {
+        if (id != null) {
+            return dataverseClient.dataset(id.intValue());
+        }
+        // As in AbstractDatasetCmd, a number is taken to be the database id of the dataset.
+        try {
+            return dataverseClient.dataset(Integer.parseInt(pid));
+        }
+        catch (NumberFormatException e) {
+            return dataverseClient.dataset(pid);
+        }
+    }
+
+    /**
+     * Reads PIDs, one per line, from a file or, if the file name is -, from stdin. Empty lines and lines starting with # are ignored.
+     *
+     * @param inputFile the file name or -
+     * @return the PIDs
+     * @throws IOException if reading fails
+     */
+    static List<String> readPids(String inputFile) throws IOException {
+        List<String> pids = new ArrayList<>();
+        try (BufferedReader reader = "-".equals(inputFile)
+            ? new BufferedReader(new InputStreamReader(System.in, StandardCharsets.UTF_8))
+            : Files.newBufferedReader(Path.of(inputFile))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                line = line.trim();
+                if (!line.isEmpty() && !line.startsWith("#")) {
+                    pids.add(line);
+                }
+            }
+        }
+        return pids;
+    }
+
+    /**
+     * Selects the PIDs of all datasets in the collection and, recursively, its subcollections.
+     *
+     * @param alias the alias of the collection
+     * @return the PIDs, in order of dataset id
+     * @throws Exception if the query fails
+     */
+    protected List<String> fetchPidsInCollection(String alias) throws Exception {
+        String query = """
+            WITH RECURSIVE collections AS (
+                SELECT dv.id
+                FROM dataverse dv
+                WHERE dv.alias = ?
+                UNION ALL
+                SELECT dvo.id
+                FROM dvobject dvo
+                         JOIN dataverse dv ON dvo.id = dv.id
+                         JOIN collections c ON dvo.owner_id = c.id
+            )
+            SELECT dvo.protocol, dvo.authority, dvo.identifier
+            FROM dataset ds
+                     JOIN dvobject dvo ON ds.id = dvo.id
+            WHERE dvo.owner_id IN (SELECT id FROM collections)
+            ORDER BY dvo.id;
+            """;
+
+        try (var context = dbApi.query(query, (ResultSet rs) -> {
+            try {
+                return PidCodec.format(rs.getString("protocol"), rs.getString("authority"), rs.getString("identifier"));
+            }
+            catch (Exception e) {
+                throw new RuntimeException("Failed to map ResultSet row to PID", e);
+            }
+        })) {
+            return context.executeFor(Collections.singletonList(new Object[] { alias }));
+        }
+    }
+}
@@ -0,0 +1,72 @@
+/*
+ * Copyright (C) 2026 DANS - Data Archiving and Networked Services (info@dans.knaw.nl)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.knaw.dans.dvcli.command;
+
+import lombok.RequiredArgsConstructor;
+import picocli.CommandLine;
+import picocli.CommandLine.Command;
+import picocli.CommandLine.Option;
+import picocli.CommandLine.Parameters;
+
+import java.io.BufferedReader;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.Callable;
+import java.util.function.Supplier;
+
+@Command(
+    name = "batch",
+    description = "Execute the dv commands in a script, one per line and without the leading 'dv', in this process, so that startup and the Dataverse client are "
+        + "shared. Empty lines and lines starting with # are ignored",
+    mixinStandardHelpOptions = true
+)
+@RequiredArgsConstructor
+public class Batch implements Callable<Integer> {
+    private final Supplier<CommandLine> commandLineFactory;
+
+    @Parameters(index = "0", paramLabel = "SCRIPT", description = "The script, or - for stdin")
+    private String script;
+
+    @Option(names = { "-k", "--keep-going" }, description = "Continue with the next line after a command fails; by default the batch stops at the first failure")
+    private boolean keepGoing;
+
+    @Override
+    public Integer call() throws Exception {
+        ScriptRunner.protectStandardStreams();
+        var runner = new ScriptRunner(commandLineFactory);
+        int result = 0;
+        try (BufferedReader reader = "-".equals(script)
+            ? new BufferedReader(new InputStreamReader(System.in, StandardCharsets.UTF_8))
+            : Files.newBufferedReader(Path.of(script))) {
+            String line;
+            int lineNumber = 0;
+            while ((line = reader.readLine()) != null) {
+                lineNumber++;
+                int exitCode = runner.execute(line);
+                if (exitCode != 0) {
+                    System.err.printf("Line %d failed with exit code %d: %s%n", lineNumber, exitCode, line);
+                    result = exitCode;
+                    if (!keepGoing) {
+                        break;
+                    }
+                }
+            }
+        }
+        return result;
+    }
+}
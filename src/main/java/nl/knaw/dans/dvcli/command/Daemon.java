@@ -0,0 +1,364 @@
+/*
+ * Copyright (C) 2026 DANS - Data Archiving and Networked Services (info@dans.knaw.nl)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.knaw.dans.dvcli.command;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import nl.knaw.dans.dvcli.DaemonProtocol;
+import nl.knaw.dans.dvcli.DaemonProtocol.FrameInputStream;
+import nl.knaw.dans.dvcli.DaemonProtocol.FrameOutputStream;
+import picocli.CommandLine;
+import picocli.CommandLine.Command;
+import picocli.CommandLine.Model.CommandSpec;
+import picocli.CommandLine.Model.OptionSpec;
+import picocli.CommandLine.Option;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.FileDescriptor;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.net.StandardProtocolFamily;
+import java.net.UnixDomainSocketAddress;
+import java.nio.channels.Channels;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.util.Arrays;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+import java.util.function.Supplier;
+import java.util.regex.Pattern;
+
+@Command(
+    name = "daemon",
+    description = "Run dv as a daemon that executes the commands of dv clients on a Unix domain socket, so that startup and the Dataverse client are shared. "
+        + "The dv launcher uses the daemon when the socket exists",
+    mixinStandardHelpOptions = true
+)
+@Slf4j
+@RequiredArgsConstructor
+public class Daemon implements Callable<Integer> {
+    /**
+     * The standard streams of the client request that the current thread is executing. Threads started by a command inherit the streams of the request.
+     * <p>
+     * Only threads created while the request runs inherit them. Threads that already existed, such as those of the common fork-join pool or of a library's own
+     * thread pool, are not routed: their output to stdout is dropped, their output to stderr goes to the stderr of the daemon and they read no stdin. A thread
+     * that was created by one request and is reused by another still writes to the first request while that runs, so commands must not share such threads
+     * between requests. Once a request has finished, the threads it created are no longer routed to it.
+     */
+    private static final InheritableThreadLocal<Streams> requestStreams = new InheritableThreadLocal<>();
+
+    /**
+     * Commands that the daemon does not execute, because they run commands themselves; the client runs these in a JVM of its own.
+     */
+    private static final Set<String> SESSION_COMMANDS = Set.of("shell", "batch", "daemon");
+
+    /**
+     * The arguments of the request that stops the daemon, as sent by dv daemon --stop.
+     */
+    private static final String[] STOP_REQUEST = { "daemon", "--stop" };
+
+    private static final Pattern SECRET_OPTION = Pattern.compile("key|password|token|secret", Pattern.CASE_INSENSITIVE);
+    private static final String REDACTED = "***";
+
+    private static class Streams {
+        private final InputStream in;
+        private final PrintStream out;
+        private final PrintStream err;
+        private volatile boolean finished;
+
+        Streams(InputStream in, PrintStream out, PrintStream err) {
+            this.in = in;
+            this.out = out;
+            this.err = err;
+        }
+    }
+
+    private final Supplier<CommandLine> commandLineFactory;
+
+    @Option(names = { "-s", "--socket" }, defaultValue = "${sys:user.home}/.dv.sock", description = "The socket to listen on (default: ~/.dv.sock)")
+    private Path socket;
+
+    @Option(names = { "--max-clients" }, defaultValue = "8", description = "Maximum number of commands executed at the same time (default: 8)")
+    private int maxClients;
+
+    @Option(names = { "--stop" }, description = "Stop the daemon listening on the socket, after the commands it is executing have finished")
+    private boolean stop;
+
+    private Path workingDirectory;
+    private ServerSocketChannel server;
+
+    @Override
+    public Integer call() throws Exception {
+        if (stop) {
+            return requestStop();
+        }
+        workingDirectory = Path.of("").toAbsolutePath();
+        var originalIn = System.in;
+        var originalOut = System.out;
+        var originalErr = System.err;
+        installRequestStreams();
+        try (var server = ServerSocketChannel.open(StandardProtocolFamily.UNIX)) {
+            this.server = server;
+            bindPrivately(server);
+            Runtime.getRuntime().addShutdownHook(new Thread(this::deleteSocket));
+            log.info("Listening on {}", socket);
+            System.err.println("dv daemon listening on " + socket);
+            ExecutorService executor = Executors.newFixedThreadPool(maxClients);
+            try {
+                while (server.isOpen()) {
+                    SocketChannel client;
+                    try {
+                        client = server.accept();
+                    }
+                    catch (ClosedChannelException e) {
+                        break;
+                    }
+                    executor.execute(() -> handle(client));
+                }
+                log.info("Stopping; waiting for running commands to finish");
+                executor.shutdown();
+                executor.awaitTermination(Long.MAX_VALUE, TimeUnit.NANOSECONDS);
+            }
+            finally {
+                executor.shutdownNow();
+                deleteSocket();
+            }
+        }
+        finally {
+            System.setIn(originalIn);
+            System.setOut(originalOut);
+            System.setErr(originalErr);
+        }
+        System.err.println("dv daemon stopped");
+        return 0;
+    }
+
+    /**
+     * Binds the server to the socket path without ever exposing the socket to other users. The daemon holds the API key and database credentials, so only the
+     * owner may connect. The socket is created in a new directory that only the owner can enter, restricted to the owner and then moved to the socket path, which
+     * replaces a socket left behind by an earlier daemon.
+     */
+    private void bindPrivately(ServerSocketChannel server) throws IOException {
+        Path socketPath = socket.toAbsolutePath();
+        Path privateDirectory = Files.createTempDirectory(socketPath.getParent(), ".dv-daemon-",
+            PosixFilePermissions.asFileAttribute(PosixFilePermissions.fromString("rwx------")));
+        Path privateSocket = privateDirectory.resolve("socket");
+        try {
+            server.bind(UnixDomainSocketAddress.of(privateSocket));
+            Files.setPosixFilePermissions(privateSocket, PosixFilePermissions.fromString("rw-------"));
+            Files.move(privateSocket, socketPath, StandardCopyOption.ATOMIC_MOVE);
+        }
+        finally {
+            Files.deleteIfExists(privateSocket);
+            Files.delete(privateDirectory);
+        }
+    }
+
+    private int requestStop() {
+        try (var channel = SocketChannel.open(StandardProtocolFamily.UNIX)) {
+            channel.connect(UnixDomainSocketAddress.of(socket));
+            var out = new DataOutputStream(new BufferedOutputStream(Channels.newOutputStream(channel)));
+            var in = new DataInputStream(new BufferedInputStream(Channels.newInputStream(channel)));
+            DaemonProtocol.writeRequest(out, Path.of("").toAbsolutePath().toString(), STOP_REQUEST);
+            in.readByte();
+            return in.readInt();
+        }
+        catch (IOException e) {
+            System.err.println("No dv daemon listening on " + socket + ": " + e.getMessage());
+            return 1;
+        }
+    }
+
+    private void handle(SocketChannel client) {
+        try (client) {
+            var in = new DataInputStream(new BufferedInputStream(Channels.newInputStream(client)));
+            var out = new DataOutputStream(new BufferedOutputStream(Channels.newOutputStream(client)));
+            String clientWorkingDirectory = DaemonProtocol.readWorkingDirectory(in);
+            String[] args = DaemonProtocol.readArgs(in);
+            int exitCode;
+            if (Arrays.equals(args, STOP_REQUEST)) {
+                log.info("Stop requested");
+                server.close();
+                exitCode = 0;
+            }
+            else if (args.length > 0 && SESSION_COMMANDS.contains(args[0])) {
+                log.debug("Refusing session command {}", args[0]);
+                exitCode = DaemonProtocol.DAEMON_UNAVAILABLE;
+            }
+            else if (!workingDirectory.equals(Path.of(clientWorkingDirectory))) {
+                // Relative paths in the arguments would be resolved against the wrong directory; let the client run the command itself.
+                log.debug("Client working directory {} differs from daemon working directory {}", clientWorkingDirectory, workingDirectory);
+                exitCode = DaemonProtocol.DAEMON_UNAVAILABLE;
+            }
+            else {
+                exitCode = execute(args, in, out);
+            }
+            DaemonProtocol.writeExit(out, exitCode);
+        }
+        catch (IOException e) {
+            log.warn("Error communicating with client: {}", e.getMessage());
+        }
+    }
+
+    private int execute(String[] args, DataInputStream in, DataOutputStream out) {
+        var stdout = new PrintStream(new FrameOutputStream(out, DaemonProtocol.STDOUT), true, StandardCharsets.UTF_8);
+        var stderr = new PrintStream(new FrameOutputStream(out, DaemonProtocol.STDERR), true, StandardCharsets.UTF_8);
+        var streams = new Streams(new FrameInputStream(in, out), stdout, stderr);
+        requestStreams.set(streams);
+        try {
+            // A new command line per request, so that concurrent requests do not share option values or other command state
+            var commandLine = commandLineFactory.get();
+            // Arguments can hold secrets, such as the builtin users key of users-import
+            log.info("Executing {}", args.length > 0 ? args[0] : "");
+            if (log.isDebugEnabled()) {
+                log.debug("Arguments: {}", String.join(" ", redactSecrets(commandLine, args)));
+            }
+            return commandLine.execute(args);
+        }
+        catch (Exception e) {
+            log.error("Error executing command", e);
+            return 1;
+        }
+        finally {
+            streams.finished = true;
+            stdout.flush();
+            stderr.flush();
+            requestStreams.remove();
+        }
+    }
+
+    /**
+     * Replaces the values of options whose name mentions a key, password, token or secret with asterisks.
+     *
+     * @param commandLine the command line that executes the arguments
+     * @param args        the arguments, starting with the subcommand
+     * @return the arguments with the secret values replaced
+     */
+    static String[] redactSecrets(CommandLine commandLine, String[] args) {
+        String[] redacted = args.clone();
+        CommandLine subcommand = args.length > 0 ? commandLine.getSubcommands().get(args[0]) : null;
+        if (subcommand == null) {
+            return redacted;
+        }
+        CommandSpec spec = subcommand.getCommandSpec();
+        for (int i = 1; i < redacted.length; i++) {
+            String arg = redacted[i];
+            if (!arg.startsWith("-")) {
+                continue;
+            }
+            int equals = arg.indexOf('=');
+            String name = equals >= 0 ? arg.substring(0, equals) : arg;
+            OptionSpec option = spec.findOption(name);
+            if (option == null && !arg.startsWith("--") && arg.length() > 2) {
+                // A short option with its value attached, as in -kVALUE
+                name = arg.substring(0, 2);
+                option = spec.findOption(name);
+                equals = option != null ? 1 : equals;
+            }
+            if (option == null || Arrays.stream(option.names()).noneMatch(n -> SECRET_OPTION.matcher(n).find())) {
+                continue;
+            }
+            if (equals >= 0) {
+                redacted[i] = name + (arg.charAt(name.length()) == '=' ? "=" : "") + REDACTED;
+            }
+            else if (i + 1 < redacted.length && option.arity().max() > 0) {
+                redacted[++i] = REDACTED;
+            }
+        }
+        return redacted;
+    }
+
+    /**
+     * Replaces the standard streams with streams that write to and read from the client of the current request. Outside a request, output to stdout is dropped,
+     * so that it never ends up in the output of the daemon itself, output to stderr goes to the stderr of the daemon and stdin is empty.
+     */
+    private static void installRequestStreams() {
+        System.setOut(new NonClosingPrintStream(new RequestOutputStream(streams -> streams.out, OutputStream.nullOutputStream())));
+        System.setErr(new NonClosingPrintStream(new RequestOutputStream(streams -> streams.err, new FileOutputStream(FileDescriptor.err))));
+        var noInput = InputStream.nullInputStream();
+        System.setIn(new InputStream() {
+            @Override
+            public int read() throws IOException {
+                return source().read();
+            }
+
+            @Override
+            public int read(byte[] b, int off, int len) throws IOException {
+                return source().read(b, off, len);
+            }
+
+            private InputStream source() {
+                var streams = requestStreams.get();
+                return current(streams) ? streams.in : noInput;
+            }
+        });
+    }
+
+    @RequiredArgsConstructor
+    private static class RequestOutputStream extends OutputStream {
+        private final Function<Streams, OutputStream> selector;
+        private final OutputStream original;
+
+        @Override
+        public void write(int b) throws IOException {
+            target().write(b);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            target().write(b, off, len);
+        }
+
+        @Override
+        public void flush() throws IOException {
+            target().flush();
+        }
+
+        private OutputStream target() {
+            var streams = requestStreams.get();
+            return current(streams) ? selector.apply(streams) : original;
+        }
+    }
+
+    private static boolean current(Streams streams) {
+        return streams != null && !streams.finished;
+    }
+
+    private void deleteSocket() {
+        try {
+            Files.deleteIfExists(socket);
+        }
+        catch (IOException e) {
+            log.warn("Could not delete socket {}: {}", socket, e.getMessage());
+        }
+    }
+}
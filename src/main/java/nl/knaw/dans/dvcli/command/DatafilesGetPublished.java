@@ -17,14 +17,19 @@ package nl.knaw.dans.dvcli.command;
 
 import lombok.Data;
 import lombok.RequiredArgsConstructor;
-import nl.knaw.dans.lib.dataverse.DatabaseApi;
+import lombok.extern.slf4j.Slf4j;
+import nl.knaw.dans.dvcli.command.ParquetOutput.ColumnType;
 import org.apache.commons.csv.CSVFormat;
 import org.apache.commons.csv.CSVPrinter;
 import picocli.CommandLine.Command;
 import picocli.CommandLine.Option;
 
 import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
 import java.io.PrintWriter;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
 import java.sql.ResultSet;
 import java.sql.Timestamp;
 import java.time.OffsetDateTime;
@@ -32,6 +37,9 @@ import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
 import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 @Command(
     name = "datafiles-get-published",
@@ -39,6 +47,7 @@ import java.util.concurrent.Callable;
     mixinStandardHelpOptions = true
 )
 @RequiredArgsConstructor
+@Slf4j
 public class DatafilesGetPublished extends AbstractDatabaseCmd implements Callable<Integer> {
 
     @Data
@@ -51,9 +60,17 @@ public class DatafilesGetPublished extends AbstractDatabaseCmd implements Callab
         private final Long filesize;
     }
 
-    private final DatabaseApi dbApi;
+    @Data
+    private static class IdRange {
+        private final long from;
+        private final long to;
+    }
+
+    private final PooledDatabase dbApi;
 
-    @Option(names = { "--output", "-o" }, description = "Output file", required = true)
+    private ParquetOutput parquetOutput;
+
+    @Option(names = { "--output", "-o" }, description = "Output file; a .gz or .zst suffix compresses the output. Required unless --summary is given")
     private File outputFile;
 
     @Option(names = { "--checksum-type" }, description = "Include checksum type in output")
@@ -74,27 +91,208 @@ public class DatafilesGetPublished extends AbstractDatabaseCmd implements Callab
     @Option(names = { "--after" }, description = "Only include datafiles published after this timestamp (ISO-8601, e.g. 2025-01-01T00:00:00+01:00)", defaultValue = "1970-01-01T00:00:00Z")
     private OffsetDateTime after;
 
+    @Option(names = { "--partitions" }, description = "Split the datafiles into this many id ranges of about the same number of datafiles and export them in parallel, each on its own database connection", defaultValue = "1")
+    private int partitions;
+
+    @Option(names = { "--keep-partitions" }, description = "Leave the partitions as numbered CSV files instead of concatenating them into the output file")
+    private boolean keepPartitions;
+
+    @Option(names = { "--format" }, defaultValue = "csv", description = "Output format, one of: csv, parquet (default: csv). Parquet cannot be combined with --keep-partitions")
+    private String format;
+
+    @Option(names = { "--summary" }, description = "Print a summary of the file size distribution: quantiles, a histogram and the largest files")
+    private boolean summary;
+
+    @Option(names = { "--top" }, description = "Number of largest files to list in the summary", defaultValue = "10")
+    private int top;
+
     @Override
     protected Integer doCall() throws Exception {
-        List<DatafileInfo> results = fetchResults();
+        if (partitions < 1) {
+            System.err.println("--partitions must be at least 1");
+            return 1;
+        }
+        if (outputFile == null && !summary) {
+            System.err.println("--output is required unless --summary is given");
+            return 1;
+        }
+
+        try {
+            if (ParquetOutput.isParquet(format) && outputFile != null) {
+                if (keepPartitions) {
+                    System.err.println("--format parquet cannot be combined with --keep-partitions");
+                    return 1;
+                }
+                parquetOutput = new ParquetOutput(outputFile);
+            }
+        }
+        catch (IllegalArgumentException e) {
+            System.err.println(e.getMessage());
+            return 1;
+        }
+
+        if (isCsvOutput()) {
+            outputFile = OutputFiles.withExtension(outputFile, ".csv");
+        }
 
-        if (!outputFile.getName().toLowerCase().endsWith(".csv")) {
-            outputFile = new File(outputFile.getParentFile(), outputFile.getName() + ".csv");
+        SizeSummary sizeSummary;
+        try (var parquet = parquetOutput) {
+            if (parquet != null) {
+                declareColumns(parquet).open();
+            }
+            if (partitions == 1) {
+                sizeSummary = exportRange(null, isCsvOutput() ? outputFile : null, true);
+            }
+            else {
+                sizeSummary = writePartitioned();
+            }
+            if (parquet != null) {
+                parquet.commit();
+            }
         }
 
-        try (var out = new PrintWriter(outputFile)) {
-            writeCsvFile(results, out);
+        if (sizeSummary != null) {
+            sizeSummary.print(new PrintWriter(System.out), "files");
         }
 
         return 0;
     }
 
-    private List<DatafileInfo> fetchResults() throws Exception {
+    private SizeSummary writePartitioned() throws Exception {
+        List<IdRange> ranges = fetchIdRanges();
+        int numDigits = Math.max(3, String.valueOf(ranges.size()).length());
+        List<File> partFiles = new ArrayList<>();
+        for (int i = 0; i < ranges.size() && isCsvOutput(); i++) {
+            String fileName = keepPartitions
+                ? String.format("%0" + numDigits + "d-%s", i + 1, outputFile.getName())
+                : String.format("part-%0" + numDigits + "d-%s", i + 1, outputFile.getName());
+            partFiles.add(new File(outputFile.getParentFile(), fileName));
+        }
+
+        // Each partition runs its query on its own database connection.
+        dbApi.ensureCapacity(ranges.size());
+        ExecutorService executor = Executors.newFixedThreadPool(Math.max(1, ranges.size()));
+        try {
+            List<Future<SizeSummary>> futures = new ArrayList<>();
+            for (int i = 0; i < ranges.size(); i++) {
+                IdRange range = ranges.get(i);
+                File partFile = isCsvOutput() ? partFiles.get(i) : null;
+                futures.add(executor.submit(() -> exportRange(range, partFile, keepPartitions)));
+            }
+            // The summaries of the partitions are merged in partition order.
+            SizeSummary sizeSummary = summary ? new SizeSummary(top) : null;
+            for (Future<SizeSummary> future : futures) {
+                SizeSummary partSummary = future.get();
+                if (sizeSummary != null) {
+                    sizeSummary.merge(partSummary);
+                }
+            }
+            if (isCsvOutput() && !keepPartitions) {
+                concatenatePartitions(partFiles);
+            }
+            return sizeSummary;
+        }
+        finally {
+            executor.shutdownNow();
+        }
+    }
+
+    private boolean isCsvOutput() {
+        return outputFile != null && parquetOutput == null;
+    }
+
+    /**
+     * Streams the datafiles in the id range to the CSV file or the Parquet output, and the size summary, so that only the rows of one fetch are in memory at a
+     * time.
+     *
+     * @param range      the id range, or null for all datafiles
+     * @param file       the CSV file, or null if the output is Parquet or only a summary is requested
+     * @param withHeader whether to write a header record
+     * @return the size summary, or null if no summary is requested
+     */
+    private SizeSummary exportRange(IdRange range, File file, boolean withHeader) throws Exception {
+        SizeSummary sizeSummary = summary ? new SizeSummary(top) : null;
+        try (var printer = file != null ? newCsvPrinter(OutputFiles.newPrintWriter(file), withHeader) : null;
+            var rows = parquetOutput != null ? parquetOutput.newRowWriter() : null) {
+            long count = streamResults(range, info -> {
+                if (printer != null) {
+                    printer.printRecord(toRecord(info));
+                }
+                if (rows != null) {
+                    rows.write(toRecord(info).toArray());
+                }
+                if (sizeSummary != null) {
+                    sizeSummary.add(info.getFileId() + " " + info.getDatasetPid(), info.getFilesize());
+                }
+            });
+            if (range != null) {
+                log.info("Exported {} datafiles with ids {}-{}", count, range.getFrom(), range.getTo());
+            }
+        }
+        return sizeSummary;
+    }
+
+    private void concatenatePartitions(List<File> partFiles) throws Exception {
+        try (var header = newCsvPrinter(OutputFiles.newPrintWriter(outputFile), true)) {
+            header.flush();
+        }
+        try (OutputStream out = Files.newOutputStream(outputFile.toPath(), StandardOpenOption.APPEND)) {
+            for (File partFile : partFiles) {
+                Files.copy(partFile.toPath(), out);
+            }
+        }
+        for (File partFile : partFiles) {
+            Files.delete(partFile.toPath());
+        }
+    }
+
+    /**
+     * Splits the ids of the published datafiles into ranges with about the same number of datafiles each, using their quantiles rather than equal widths of the
+     * id range, so that gaps in the ids do not make some partitions much larger than others.
+     *
+     * @return the ranges, in ascending order; fewer than the number of partitions if there are fewer datafiles
+     */
+    private List<IdRange> fetchIdRanges() throws Exception {
+        var publishedAfterClause = after != null ? "AND dvo.publicationdate > ?\n" : "";
+        var query = """
+            SELECT MIN(id) AS FROMID,
+                   MAX(id) AS TOID
+            FROM (SELECT dvo.id,
+                         NTILE(?) OVER (ORDER BY dvo.id) AS PART
+                  FROM dvobject dvo
+                  WHERE dvo.dtype = 'DataFile'
+                    AND dvo.publicationdate IS NOT NULL
+                    """ + publishedAfterClause + """
+                 ) AS numbered
+            GROUP BY PART
+            ORDER BY PART;
+            """;
+
+        List<Object> params = new ArrayList<>();
+        params.add(partitions);
+        if (after != null) {
+            params.add(Timestamp.from(after.toInstant()));
+        }
+
+        try (var context = dbApi.query(query, (ResultSet rs) -> {
+            try {
+                return new IdRange(rs.getLong("FROMID"), rs.getLong("TOID"));
+            }
+            catch (Exception e) {
+                throw new RuntimeException("Failed to map ResultSet row to IdRange", e);
+            }
+        })) {
+            return context.executeFor(Collections.singletonList(params.toArray()));
+        }
+    }
+
+    private long streamResults(IdRange range, PooledDatabase.RowConsumer<DatafileInfo> consumer) throws Exception {
         /*
          * Note that Dataverse stores the checksum of the *original* file in the datafile table but the length of the *.tab* file (if available).
          * To also get the length of the *original* file, we have to look in the datatable table.
          */
         var publishedAfterClause = after != null ? "AND dvo.publicationdate > ?\n" : "";
+        var idRangeClause = range != null ? "AND dvo.id BETWEEN ? AND ?\n" : "";
         var query = """
             SELECT dvo.id                                                      AS FILEID,
                    ds_dvo.protocol || ':' || ds_dvo.authority || '/' || ds_dvo.identifier AS DATASET_PID,
@@ -108,13 +306,18 @@ public class DatafilesGetPublished extends AbstractDatabaseCmd implements Callab
                      LEFT JOIN datatable dt ON df.id = dt.datafile_id
             WHERE dvo.dtype = 'DataFile'
               AND dvo.publicationdate IS NOT NULL
-              """ + publishedAfterClause + """
+              """ + publishedAfterClause + idRangeClause + """
             ORDER BY FILEID ASC;
             """;
 
-        var params = after != null
-            ? new Object[] { Timestamp.from(after.toInstant()) }
-            : new Object[0];
+        List<Object> params = new ArrayList<>();
+        if (after != null) {
+            params.add(Timestamp.from(after.toInstant()));
+        }
+        if (range != null) {
+            params.add(range.getFrom());
+            params.add(range.getTo());
+        }
 
         try (var context = dbApi.query(query, (ResultSet rs) -> {
             try {
@@ -131,11 +334,31 @@ public class DatafilesGetPublished extends AbstractDatabaseCmd implements Callab
                 throw new RuntimeException("Failed to map ResultSet row to DatafileInfo", e);
             }
         })) {
-            return context.executeFor(Collections.singletonList(params));
+            return context.stream(params.toArray(), consumer);
         }
     }
 
-    private void writeCsvFile(List<DatafileInfo> results, PrintWriter out) throws Exception {
+    private ParquetOutput declareColumns(ParquetOutput parquetOutput) {
+        if (datasetPid) {
+            parquetOutput.column("DATASET_PID", ColumnType.STRING);
+        }
+        parquetOutput.column("FILEID", ColumnType.INT64);
+        if (checksumType) {
+            parquetOutput.column("CHECKSUM_TYPE", ColumnType.STRING);
+        }
+        if (checksumValue) {
+            parquetOutput.column("CHECKSUM_VALUE", ColumnType.STRING);
+        }
+        if (publicationTimestamp) {
+            parquetOutput.column("PUBLICATION_TIMESTAMP", ColumnType.TIMESTAMP);
+        }
+        if (filesize) {
+            parquetOutput.column("FILESIZE", ColumnType.INT64);
+        }
+        return parquetOutput;
+    }
+
+    private CSVPrinter newCsvPrinter(PrintWriter out, boolean withHeader) throws IOException {
         List<String> headers = new ArrayList<>();
         if (datasetPid) {
             headers.add("DATASET_PID");
@@ -153,31 +376,30 @@ public class DatafilesGetPublished extends AbstractDatabaseCmd implements Callab
         if (filesize) {
             headers.add("FILESIZE");
         }
-
-        try (var printer = new CSVPrinter(out, CSVFormat.DEFAULT.builder()
+        return new CSVPrinter(out, CSVFormat.DEFAULT.builder()
             .setHeader(headers.toArray(new String[0]))
-            .get())) {
-            for (DatafileInfo info : results) {
-                List<Object> record = new ArrayList<>();
-                if (datasetPid) {
-                    record.add(info.getDatasetPid());
-                }
-                record.add(info.getFileId());
-                if (checksumType) {
-                    record.add(info.getChecksumType());
-                }
-                if (checksumValue) {
-                    record.add(info.getChecksumValue());
-                }
-                if (publicationTimestamp) {
-                    record.add(info.getPublicationTimestamp());
-                }
-                if (filesize) {
-                    record.add(info.getFilesize());
-                }
-                printer.printRecord(record);
-            }
-            printer.flush();
+            .setSkipHeaderRecord(!withHeader)
+            .get());
+    }
+
+    private List<Object> toRecord(DatafileInfo info) {
+        List<Object> record = new ArrayList<>();
+        if (datasetPid) {
+            record.add(info.getDatasetPid());
+        }
+        record.add(info.getFileId());
+        if (checksumType) {
+            record.add(info.getChecksumType());
+        }
+        if (checksumValue) {
+            record.add(info.getChecksumValue());
+        }
+        if (publicationTimestamp) {
+            record.add(info.getPublicationTimestamp());
+        }
+        if (filesize) {
+            record.add(info.getFilesize());
         }
+        return record;
     }
 }
@@ -23,7 +23,6 @@ import lombok.NoArgsConstructor;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import nl.knaw.dans.dvcli.config.ArchivalCopyConfig;
-import nl.knaw.dans.lib.dataverse.DatabaseApi;
 import nl.knaw.dans.lib.dataverse.DataverseClient;
 import nl.knaw.dans.lib.dataverse.DataverseException;
 import org.apache.commons.csv.CSVFormat;
@@ -62,7 +61,7 @@ import java.util.concurrent.Callable;
 @RequiredArgsConstructor
 public class DatasetArchiveVersion extends AbstractDatabaseCmd implements Callable<Integer> {
     private final DataverseClient dataverseClient;
-    private final DatabaseApi dbApi;
+    private final PooledDatabase dbApi;
     private final ArchivalCopyConfig archivalCopyConfig;
 
     @ArgGroup(multiplicity = "1")
@@ -368,10 +367,10 @@ public class DatasetArchiveVersion extends AbstractDatabaseCmd implements Callab
                    dsv.archivalcopylocation
             FROM datasetversion dsv
                      JOIN dvobject dvo ON dsv.dataset_id = dvo.id
-            WHERE dvo.protocol || ':' || dvo.authority || '/' || dvo.identifier = ?
+            WHERE %s
                  AND dsv.versionstate IN ('RELEASED', 'DEACCESSIONED')
             ORDER BY MAJORVERSION ASC, MINORVERSION ASC
-            """;
+            """.formatted(PidCodec.predicate("dvo"));
 
         try (var context = dbApi.query(query, (ResultSet rs) -> {
             try {
@@ -385,7 +384,7 @@ public class DatasetArchiveVersion extends AbstractDatabaseCmd implements Callab
                 throw new RuntimeException("Failed to map ResultSet row to InternalVersionInfo", e);
             }
         })) {
-            return context.executeFor(Collections.singletonList(new Object[] { pid }));
+            return context.executeFor(Collections.singletonList(PidCodec.parameters(PidCodec.parse(pid))));
         }
     }
 
@@ -0,0 +1,108 @@
+/*
+ * Copyright (C) 2026 DANS - Data Archiving and Networked Services (info@dans.knaw.nl)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.knaw.dans.dvcli.command;
+
+import io.dropwizard.util.Duration;
+import lombok.Data;
+import lombok.RequiredArgsConstructor;
+import org.apache.commons.csv.CSVFormat;
+import org.apache.commons.csv.CSVPrinter;
+import picocli.CommandLine.Command;
+import picocli.CommandLine.Option;
+
+import java.sql.ResultSet;
+import java.time.Instant;
+import java.util.concurrent.Callable;
+
+@Command(
+    name = "dataset-locks-report",
+    description = "Generate a CSV file with all current dataset locks",
+    mixinStandardHelpOptions = true
+)
+@RequiredArgsConstructor
+public class DatasetLocksReport extends AbstractDatabaseCmd implements Callable<Integer> {
+
+    @Data
+    private static class LockInfo {
+        private final String pid;
+        private final String lockType;
+        private final String user;
+        private final Instant startTime;
+        private final long ageSeconds;
+        private final String info;
+    }
+
+    private final PooledDatabase dbApi;
+
+    @Option(names = { "--min-age" }, defaultValue = "0 seconds", description = "Only report locks that are at least this old, e.g. '2 days' (default: 0 seconds)")
+    private Duration minAge;
+
+    @Option(names = { "--lock-type" }, description = "Only report locks of this type (e.g., 'Ingest', 'Workflow')")
+    private String lockType;
+
+    @Option(names = { "-o", "--output-file" }, defaultValue = "-", description = "Output CSV file (default: stdout); a .gz or .zst suffix compresses the output")
+    private String outputFile;
+
+    @Override
+    protected Integer doCall() throws Exception {
+        long count;
+        try (var printer = new CSVPrinter(OutputFiles.newPrintWriter(outputFile), CSVFormat.DEFAULT.builder()
+            .setHeader("PID", "LOCK_TYPE", "USER", "START_TIME", "AGE", "INFO")
+            .get())) {
+            count = streamLocks(lock -> printer.printRecord(lock.getPid(), lock.getLockType(), lock.getUser(), lock.getStartTime(),
+                java.time.Duration.ofSeconds(lock.getAgeSeconds()), lock.getInfo()));
+        }
+        System.err.printf("Found %d locks%n", count);
+        return 0;
+    }
+
+    private long streamLocks(PooledDatabase.RowConsumer<LockInfo> consumer) throws Exception {
+        String query = """
+            SELECT dvo.protocol,
+                   dvo.authority,
+                   dvo.identifier,
+                   dl.reason,
+                   au.useridentifier,
+                   dl.starttime,
+                   dl.info,
+                   EXTRACT(EPOCH FROM (now() - dl.starttime))::bigint AS AGE_SECONDS
+            FROM datasetlock dl
+                     JOIN dvobject dvo ON dl.dataset_id = dvo.id
+                     LEFT JOIN authenticateduser au ON dl.user_id = au.id
+            WHERE dl.starttime <= now() - (? * INTERVAL '1 second')
+              AND (?::text IS NULL OR dl.reason = ?)
+            ORDER BY dl.starttime;
+            """;
+
+        try (var context = dbApi.query(query, (ResultSet rs) -> {
+            try {
+                var startTime = rs.getTimestamp("starttime");
+                return new LockInfo(
+                    PidCodec.format(rs.getString("protocol"), rs.getString("authority"), rs.getString("identifier")),
+                    rs.getString("reason"),
+                    rs.getString("useridentifier"),
+                    startTime != null ? startTime.toInstant() : null,
+                    rs.getLong("AGE_SECONDS"),
+                    rs.getString("info"));
+            }
+            catch (Exception e) {
+                throw new RuntimeException("Failed to map ResultSet row to LockInfo", e);
+            }
+        })) {
+            return context.stream(new Object[] { minAge.toSeconds(), lockType, lockType }, consumer);
+        }
+    }
+}
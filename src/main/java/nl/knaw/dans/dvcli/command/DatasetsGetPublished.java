@@ -17,7 +17,7 @@ package nl.knaw.dans.dvcli.command;
 
 import lombok.Data;
 import lombok.RequiredArgsConstructor;
-import nl.knaw.dans.lib.dataverse.DatabaseApi;
+import nl.knaw.dans.dvcli.command.ParquetOutput.ColumnType;
 import org.apache.commons.csv.CSVFormat;
 import org.apache.commons.csv.CSVPrinter;
 import picocli.CommandLine.ArgGroup;
@@ -26,12 +26,16 @@ import picocli.CommandLine.Model.CommandSpec;
 import picocli.CommandLine.Option;
 import picocli.CommandLine.Spec;
 
+import java.io.Closeable;
 import java.io.File;
+import java.io.IOException;
 import java.io.PrintWriter;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
 import java.sql.ResultSet;
 import java.sql.Timestamp;
 import java.time.OffsetDateTime;
-import java.util.Collections;
+import java.util.ArrayList;
 import java.util.List;
 import java.util.concurrent.Callable;
 
@@ -50,14 +54,14 @@ public class DatasetsGetPublished extends AbstractDatabaseCmd implements Callabl
     }
 
     public static class CsvOptions {
-        @Option(names = { "--output", "-o" }, description = "Output file")
+        @Option(names = { "--output", "-o" }, description = "Output file; a .gz or .zst suffix compresses the output")
         private File outputFile;
 
         @Option(names = { "--batch-size", "-b" }, description = "Split output into files of batch-size records")
         private Integer batchSize;
     }
 
-    private final DatabaseApi dbApi;
+    private final PooledDatabase dbApi;
 
     @Spec
     CommandSpec spec;
@@ -65,6 +69,9 @@ public class DatasetsGetPublished extends AbstractDatabaseCmd implements Callabl
     @ArgGroup(exclusive = false, heading = "CSV options:%n")
     private CsvOptions csvOptions;
 
+    @Option(names = { "--format" }, defaultValue = "csv", description = "Output format, one of: csv, parquet (default: csv). Parquet requires --output and cannot be combined with --batch-size")
+    private String format;
+
     @Option(names = { "--after" }, description = "Filter on dataset versions published after this timestamp (ISO 8601 format)", defaultValue = "1970-01-01T00:00:00Z")
     private OffsetDateTime after;
 
@@ -82,27 +89,45 @@ public class DatasetsGetPublished extends AbstractDatabaseCmd implements Callabl
 
     @Override
     protected Integer doCall() throws Exception {
-        List<DatasetVersionInfo> results = fetchResults();
-
         File outputFile = csvOptions != null ? csvOptions.outputFile : null;
         Integer batchSize = csvOptions != null ? csvOptions.batchSize : null;
 
-        if (outputFile != null && !outputFile.getName().toLowerCase().endsWith(".csv")) {
-            outputFile = new File(outputFile.getParentFile(), outputFile.getName() + ".csv");
+        ParquetOutput parquetOutput = null;
+        try {
+            if (ParquetOutput.isParquet(format)) {
+                if (outputFile == null || batchSize != null) {
+                    System.err.println("--format parquet requires --output and cannot be combined with --batch-size");
+                    return 1;
+                }
+                parquetOutput = new ParquetOutput(outputFile);
+            }
+        }
+        catch (IllegalArgumentException e) {
+            System.err.println(e.getMessage());
+            return 1;
+        }
+
+        if (parquetOutput != null) {
+            writeParquetFile(parquetOutput);
+            return 0;
+        }
+
+        if (outputFile != null) {
+            outputFile = OutputFiles.withExtension(outputFile, ".csv");
         }
 
         boolean csv = outputFile != null || batchSize != null;
 
         if (batchSize != null && outputFile != null) {
-            writeBatchCsvFiles(results, outputFile, batchSize);
+            writeBatchCsvFiles(outputFile, batchSize);
         }
         else {
             try (var out = createOutputWriter(outputFile)) {
                 if (csv) {
-                    writeSingleCsvFile(results, out);
+                    writeSingleCsvFile(out);
                 }
                 else {
-                    writeTable(results, out);
+                    writeTable(out);
                 }
             }
         }
@@ -112,14 +137,17 @@ public class DatasetsGetPublished extends AbstractDatabaseCmd implements Callabl
 
     private PrintWriter createOutputWriter(File outputFile) throws Exception {
         if (outputFile != null) {
-            return new PrintWriter(outputFile);
+            return OutputFiles.newPrintWriter(outputFile);
         }
         else {
             return spec.commandLine().getOut();
         }
     }
 
-    private List<DatasetVersionInfo> fetchResults() throws Exception {
+    /**
+     * Runs the query and hands each row to the consumer as it is read, so that the result does not have to fit in memory.
+     */
+    private void streamResults(PooledDatabase.RowConsumer<DatasetVersionInfo> consumer) throws Exception {
         String query = """
             SELECT dvo.protocol || ':' || dvo.authority || '/' || dvo.identifier AS PID,
                    dsv.versionnumber                                             AS MAJORVERSION,
@@ -164,55 +192,119 @@ public class DatasetsGetPublished extends AbstractDatabaseCmd implements Callabl
                 throw new RuntimeException("Failed to map ResultSet row to DatasetVersionInfo", e);
             }
         })) {
-            return context.executeFor(Collections.singletonList(parameters));
+            context.stream(parameters, consumer);
         }
     }
 
-    private void writeBatchCsvFiles(List<DatasetVersionInfo> results, File outputFile, int batchSize) throws Exception {
-        int totalResults = results.size();
-        int numBatches = (int) Math.ceil((double) totalResults / batchSize);
-        int numDigits = Math.max(3, String.valueOf(numBatches).length());
-        String format = "%0" + numDigits + "d-%s";
-
-        String baseName = outputFile.getName();
-
-        for (int i = 0; i < numBatches; i++) {
-            int fromIndex = i * batchSize;
-            int toIndex = Math.min(fromIndex + batchSize, totalResults);
-            List<DatasetVersionInfo> batch = results.subList(fromIndex, toIndex);
-
-            String fileName = String.format(format, i + 1, baseName);
-            File batchFile = new File(outputFile.getParentFile(), fileName);
-
-            try (var out = new PrintWriter(batchFile);
-                var printer = new CSVPrinter(out, CSVFormat.DEFAULT.builder()
-                    .setHeader("PID", "MAJORVERSION", "MINORVERSION")
-                    .build())) {
-                for (DatasetVersionInfo info : batch) {
-                    printer.printRecord(info.getPid(), info.getMajorVersion(), info.getMinorVersion());
-                    printer.flush();
+    private void writeBatchCsvFiles(File outputFile, int batchSize) throws Exception {
+        try (var writer = new BatchCsvWriter(outputFile, batchSize)) {
+            streamResults(writer::writeRecord);
+            writer.commit();
+        }
+    }
+
+    /**
+     * Writes records to a sequence of CSV files of at most batchSize records each, opening the next file when the current one is full. Since the number of files is
+     * only known at the end, the files are written under temporary names and renamed to their zero-padded final names by {@link #commit()}. If the writer is
+     * closed without a commit, for example because writing failed, the temporary files are deleted, so that no incomplete files are left that look complete.
+     */
+    private static class BatchCsvWriter implements Closeable {
+        private final File directory;
+        private final String baseName;
+        private final int batchSize;
+        private final List<File> batchFiles = new ArrayList<>();
+        private CSVPrinter printer;
+        private int recordsInBatch;
+        private boolean committed;
+
+        public BatchCsvWriter(File outputFile, int batchSize) {
+            this.directory = outputFile.getParentFile();
+            this.baseName = outputFile.getName();
+            this.batchSize = batchSize;
+        }
+
+        public void writeRecord(DatasetVersionInfo info) throws IOException {
+            if (printer == null || recordsInBatch >= batchSize) {
+                startNextBatch();
+            }
+            printer.printRecord(info.getPid(), info.getMajorVersion(), info.getMinorVersion());
+            recordsInBatch++;
+        }
+
+        private void startNextBatch() throws IOException {
+            closeCurrentBatch();
+            // Keep the compression suffix at the end, so that OutputFiles compresses the temporary file as well.
+            File batchFile = new File(directory, String.format(".%d-%s", batchFiles.size() + 1, baseName));
+            batchFiles.add(batchFile);
+            printer = new CSVPrinter(OutputFiles.newPrintWriter(batchFile), CSVFormat.DEFAULT.builder()
+                .setHeader("PID", "MAJORVERSION", "MINORVERSION")
+                .build());
+            recordsInBatch = 0;
+        }
+
+        private void closeCurrentBatch() throws IOException {
+            if (printer != null) {
+                printer.close();
+                printer = null;
+            }
+        }
+
+        public void commit() throws IOException {
+            closeCurrentBatch();
+            int numDigits = Math.max(3, String.valueOf(batchFiles.size()).length());
+            String format = "%0" + numDigits + "d-%s";
+            for (int i = 0; i < batchFiles.size(); i++) {
+                File finalFile = new File(directory, String.format(format, i + 1, baseName));
+                Files.move(batchFiles.get(i).toPath(), finalFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
+            }
+            committed = true;
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (committed) {
+                return;
+            }
+            try {
+                closeCurrentBatch();
+            }
+            finally {
+                for (File batchFile : batchFiles) {
+                    Files.deleteIfExists(batchFile.toPath());
                 }
             }
         }
     }
 
-    private void writeSingleCsvFile(List<DatasetVersionInfo> results, PrintWriter out) throws Exception {
+    private void writeParquetFile(ParquetOutput parquetOutput) throws Exception {
+        try (parquetOutput) {
+            parquetOutput
+                .column("PID", ColumnType.STRING)
+                .column("MAJORVERSION", ColumnType.INT64)
+                .column("MINORVERSION", ColumnType.INT64)
+                .open();
+            try (var rows = parquetOutput.newRowWriter()) {
+                streamResults(info -> rows.write(info.getPid(), info.getMajorVersion(), info.getMinorVersion()));
+            }
+            parquetOutput.commit();
+        }
+    }
+
+    private void writeSingleCsvFile(PrintWriter out) throws Exception {
         try (var printer = new CSVPrinter(out, CSVFormat.DEFAULT.builder()
             .setHeader("PID", "MAJORVERSION", "MINORVERSION")
             .build())) {
-            for (DatasetVersionInfo info : results) {
-                printer.printRecord(info.getPid(), info.getMajorVersion(), info.getMinorVersion());
-                printer.flush();
-            }
+            streamResults(info -> printer.printRecord(info.getPid(), info.getMajorVersion(), info.getMinorVersion()));
+            printer.flush();
         }
     }
 
-    private void writeTable(List<DatasetVersionInfo> results, PrintWriter out) {
+    private void writeTable(PrintWriter out) throws Exception {
         out.printf("%-40s %-15s%n", "PID", "Version");
         out.println("-".repeat(56));
-        for (DatasetVersionInfo info : results) {
+        streamResults(info -> {
             String version = info.getMajorVersion() + "." + info.getMinorVersion();
             out.printf("%-40s %-15s%n", info.getPid(), version);
-        }
+        });
     }
 }
@@ -0,0 +1,195 @@
+/*
+ * Copyright (C) 2026 DANS - Data Archiving and Networked Services (info@dans.knaw.nl)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.knaw.dans.dvcli.command;
+
+import lombok.Data;
+import lombok.RequiredArgsConstructor;
+import nl.knaw.dans.lib.dataverse.DataverseClient;
+import org.apache.commons.csv.CSVFormat;
+import org.apache.commons.csv.CSVPrinter;
+import picocli.CommandLine.Command;
+import picocli.CommandLine.Option;
+
+import java.sql.ResultSet;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+
+@Command(name = "datasets-get-storage-driver",
+         description = "Generate a CSV file with the storage driver of many datasets, read from the database",
+         mixinStandardHelpOptions = true)
+@RequiredArgsConstructor
+public class DatasetsGetStorageDriver extends AbstractDatabaseCmd implements Callable<Integer> {
+    private static final String DEFAULT_DRIVER = "(default)";
+    private static final String OK = "OK";
+    private static final String NOT_FOUND = "NOT_FOUND";
+
+    @Data
+    private static class Node {
+        private final long id;
+        private final Long ownerId;
+        private final String pid;
+        private final String alias;
+        private final String storageDriver;
+    }
+
+    private final DataverseClient dataverseClient;
+    private final PooledDatabase dbApi;
+
+    @Option(names = { "-i", "--input-file" }, description = "File with one PID or database id per line, or - for stdin; if omitted, all datasets are reported. "
+        + "Datasets that are not found are reported with outcome NOT_FOUND")
+    private String inputFile;
+
+    @Option(names = { "--collection" }, description = "Only report datasets in this collection and its subcollections")
+    private String collection;
+
+    @Option(names = { "-o", "--output-file" }, defaultValue = "-", description = "Output CSV file (default: stdout); a .gz or .zst suffix compresses the output")
+    private String outputFile;
+
+    @Override
+    protected Integer doCall() throws Exception {
+        List<String> references = inputFile != null ? AbstractBulkDatasetCmd.readPids(inputFile) : null;
+        Map<String, Long> ids = references != null ? PidCodec.resolveDatasets(dbApi, references) : null;
+        Map<String, String> labelsById = StorageDrivers.fetchLabelsById(dataverseClient);
+        Map<Long, Node> collections = new HashMap<>();
+        for (Node node : fetchCollections()) {
+            collections.put(node.getId(), node);
+        }
+
+        int count = 0;
+        int notFound = 0;
+        try (var printer = new CSVPrinter(OutputFiles.newPrintWriter(outputFile), CSVFormat.DEFAULT.builder()
+            .setHeader("PID", "STORAGE_DRIVER", "EFFECTIVE_STORAGE_DRIVER", "INHERITED_FROM", "OUTCOME")
+            .get())) {
+            if (references == null) {
+                for (Node dataset : fetchDatasets(null)) {
+                    List<String> row = toRow(dataset, collections, labelsById);
+                    if (row != null) {
+                        printer.printRecord(row);
+                        count++;
+                    }
+                }
+            }
+            else {
+                // One row per line of the input, in the order of the input, so that the output can be matched with it
+                Map<Long, Node> datasetsById = new HashMap<>();
+                for (Node dataset : fetchDatasets(ids.values())) {
+                    datasetsById.put(dataset.getId(), dataset);
+                }
+                for (String reference : references) {
+                    Node dataset = ids.containsKey(reference) ? datasetsById.get(ids.get(reference)) : null;
+                    List<String> row = dataset != null ? toRow(dataset, collections, labelsById) : null;
+                    if (dataset == null) {
+                        printer.printRecord(reference, "", "", "", NOT_FOUND);
+                        notFound++;
+                    }
+                    else if (row != null) {
+                        printer.printRecord(row);
+                        count++;
+                    }
+                }
+            }
+        }
+        System.err.printf("Reported the storage driver of %d datasets%s%n", count, notFound > 0 ? String.format("; %d not found", notFound) : "");
+        return notFound == 0 ? 0 : 1;
+    }
+
+    /**
+     * Returns the output row of a dataset, or null if a collection was specified and the dataset is not in it.
+     */
+    private List<String> toRow(Node dataset, Map<Long, Node> collections, Map<String, String> labelsById) {
+        // The effective driver is that of the dataset itself or else of the nearest collection above it that has one.
+        Node source = dataset;
+        Node current = dataset;
+        boolean inCollection = collection == null;
+        Set<Long> visited = new HashSet<>();
+        while (current.getOwnerId() != null && visited.add(current.getOwnerId())) {
+            current = collections.get(current.getOwnerId());
+            if (current == null) {
+                break;
+            }
+            if (source.getStorageDriver() == null && current.getStorageDriver() != null) {
+                source = current;
+            }
+            if (current.getAlias().equals(collection)) {
+                inCollection = true;
+            }
+        }
+        if (!inCollection) {
+            return null;
+        }
+        String effective = source.getStorageDriver() != null ? source.getStorageDriver() : DEFAULT_DRIVER;
+        return List.of(dataset.getPid(),
+            dataset.getStorageDriver() != null ? labelsById.getOrDefault(dataset.getStorageDriver(), dataset.getStorageDriver()) : "",
+            labelsById.getOrDefault(effective, effective),
+            source == dataset ? "" : source.getStorageDriver() != null ? source.getAlias() : DEFAULT_DRIVER,
+            OK);
+    }
+
+    private List<Node> fetchCollections() throws Exception {
+        String query = """
+            SELECT dvo.id, dvo.owner_id, dv.alias, dv.storagedriver
+            FROM dataverse dv
+                     JOIN dvobject dvo ON dv.id = dvo.id;
+            """;
+
+        try (var context = dbApi.query(query, (ResultSet rs) -> {
+            try {
+                return new Node(rs.getLong("id"), rs.getObject("owner_id", Long.class), null, rs.getString("alias"), rs.getString("storagedriver"));
+            }
+            catch (Exception e) {
+                throw new RuntimeException("Failed to map ResultSet row to collection", e);
+            }
+        })) {
+            return context.executeFor(Collections.singletonList(new Object[0]));
+        }
+    }
+
+    /**
+     * Fetches the datasets with the given ids, or all datasets if ids is null.
+     */
+    private List<Node> fetchDatasets(Collection<Long> ids) throws Exception {
+        String query = """
+            SELECT dvo.id, dvo.owner_id, dvo.protocol, dvo.authority, dvo.identifier, ds.storagedriver
+            FROM dataset ds
+                     JOIN dvobject dvo ON ds.id = dvo.id
+            WHERE ?::bigint[] IS NULL OR ds.id = ANY (?)
+            ORDER BY dvo.id;
+            """;
+        Long[] idArray = ids != null ? ids.toArray(new Long[0]) : null;
+
+        try (var context = dbApi.query(query, (ResultSet rs) -> {
+            try {
+                return new Node(
+                    rs.getLong("id"),
+                    rs.getObject("owner_id", Long.class),
+                    PidCodec.format(rs.getString("protocol"), rs.getString("authority"), rs.getString("identifier")),
+                    null,
+                    rs.getString("storagedriver"));
+            }
+            catch (Exception e) {
+                throw new RuntimeException("Failed to map ResultSet row to dataset", e);
+            }
+        })) {
+            return context.executeFor(Collections.singletonList(new Object[] { idArray, idArray }));
+        }
+    }
+}
@@ -19,18 +19,23 @@ import io.dropwizard.util.DataSize;
 import io.dropwizard.util.DataSizeUnit;
 import lombok.Data;
 import lombok.RequiredArgsConstructor;
-import nl.knaw.dans.lib.dataverse.DatabaseApi;
+import nl.knaw.dans.dvcli.command.ParquetOutput.ColumnType;
+import nl.knaw.dans.lib.dataverse.DataverseClient;
 import nl.knaw.dans.lib.util.DataSizeUnitConverter;
 import org.apache.commons.csv.CSVFormat;
 import org.apache.commons.csv.CSVPrinter;
 import picocli.CommandLine.Command;
 import picocli.CommandLine.Option;
 
+import java.io.File;
 import java.io.PrintWriter;
+import java.nio.file.Path;
 import java.sql.ResultSet;
-import java.util.ArrayList;
+import java.util.Comparator;
 import java.util.List;
+import java.util.Locale;
 import java.util.concurrent.Callable;
+import java.util.stream.Stream;
 
 @Command(
     name = "datasets-get-storage-size",
@@ -47,7 +52,8 @@ public class DatasetsGetStorageSize extends AbstractDatabaseCmd implements Calla
         private final long files;
     }
 
-    private final DatabaseApi dbApi;
+    private final DataverseClient dataverseClient;
+    private final PooledDatabase dbApi;
 
     @Option(names = { "-b", "--base" }, converter = DataSizeUnitConverter.class, description = "Base for storage size: B, KB, MB, GB, TB, PB, KiB, MiB, GiB, TiB, PiB (case-insensitive).")
     private DataSizeUnit base;
@@ -64,49 +70,177 @@ public class DatasetsGetStorageSize extends AbstractDatabaseCmd implements Calla
     @Option(names = { "--max-files" }, description = "Maximum number of files")
     private Long maxFiles;
 
-    @Option(names = { "-o", "--output-file" }, defaultValue = "-", description = "Output CSV file (default: stdout)")
+    @Option(names = { "--cache" }, description = "Storage size cache file; only datasets whose versions changed since the previous run are recomputed, the rest is read from the cache")
+    private Path cacheFile;
+
+    @Option(names = { "--driver-report" }, description = "Also write the storage size, file and dataset count per storage driver to this CSV file")
+    private File driverReport;
+
+    @Option(names = { "--default-driver" }, defaultValue = "file", description = "Id of the default storage driver of the Dataverse installation, as set with "
+        + "the JVM option dataverse.files.storage-driver-id. The driver report counts files whose storage identifier has no driver "
+        + "prefix under this driver (default: file, the default of Dataverse)")
+    private String defaultDriver;
+
+    @Option(names = { "--collection-report" }, description = "Also write the storage size, file and dataset count per collection, including its subcollections, to this CSV file")
+    private File collectionReport;
+
+    @Option(names = { "--summary" }, description = "Print a summary of the dataset size distribution: quantiles, a histogram and the largest datasets. "
+        + "Without --output-file, only the summary is printed")
+    private boolean summary;
+
+    @Option(names = { "--top" }, description = "Number of largest datasets to list in the summary", defaultValue = "10")
+    private int top;
+
+    @Option(names = { "-o", "--output-file" }, defaultValue = "-", description = "Output CSV file (default: stdout); a .gz or .zst suffix compresses the output")
     private String outputFile;
 
+    @Option(names = { "--format" }, defaultValue = "csv", description = "Output format, one of: csv, parquet (default: csv). Parquet requires --output-file")
+    private String format;
+
     @Override
     protected Integer doCall() throws Exception {
-        List<DatasetStorageInfo> results = fetchResults();
+        boolean breakdownRequested = driverReport != null || collectionReport != null;
+        if (breakdownRequested && cacheFile != null) {
+            System.err.println("--cache cannot be combined with --driver-report or --collection-report");
+            return 1;
+        }
 
-        if (!"-".equals(outputFile) && !outputFile.toLowerCase().endsWith(".csv")) {
-            outputFile += ".csv";
+        ParquetOutput parquetOutput = null;
+        try {
+            if (ParquetOutput.isParquet(format)) {
+                if ("-".equals(outputFile)) {
+                    System.err.println("--format parquet requires --output-file");
+                    return 1;
+                }
+                parquetOutput = new ParquetOutput(new File(outputFile));
+            }
+        }
+        catch (IllegalArgumentException e) {
+            System.err.println(e.getMessage());
+            return 1;
         }
 
-        try (PrintWriter out = createOutputWriter();
-            CSVPrinter printer = new CSVPrinter(out, CSVFormat.DEFAULT.builder()
-                .setHeader("PID", "STORAGE", "FILES")
-                .build())) {
-            for (DatasetStorageInfo info : results) {
-                Object storageOutput;
+        if (parquetOutput != null) {
+            parquetOutput
+                .column("PID", ColumnType.STRING)
+                .column("STORAGE", base != null ? ColumnType.DOUBLE : ColumnType.INT64)
+                .column("FILES", ColumnType.INT64)
+                .open();
+        }
+        else if (!"-".equals(outputFile)) {
+            outputFile = OutputFiles.withExtension(outputFile, ".csv");
+        }
 
-                if (base != null) {
-                    storageOutput = String.format("%.1f", (double) info.getStorage() / base.toBytes(1));
+        // With --summary and without --output-file, only the summary is printed.
+        boolean writeCsv = parquetOutput == null && (!summary || !"-".equals(outputFile));
+        SizeSummary sizeSummary = summary ? new SizeSummary(top) : null;
+        StorageSizeBreakdown breakdown = null;
+        try (var parquet = parquetOutput;
+            var rows = parquet != null ? parquet.newRowWriter() : null;
+            PrintWriter out = writeCsv ? OutputFiles.newPrintWriter(outputFile) : null;
+            CSVPrinter printer = out != null ? new CSVPrinter(out, CSVFormat.DEFAULT.builder()
+                .setHeader("PID", "STORAGE", "FILES")
+                .build()) : null) {
+            PooledDatabase.RowConsumer<DatasetStorageInfo> consumer = info -> {
+                if (printer != null) {
+                    printer.printRecord(info.getPid(), formatStorage(info.getStorage()), info.getFiles());
+                }
+                if (rows != null) {
+                    rows.write(info.getPid(), storageValue(info.getStorage()), info.getFiles());
                 }
-                else {
-                    storageOutput = info.getStorage();
+                if (sizeSummary != null) {
+                    sizeSummary.add(info.getPid(), info.getStorage());
                 }
+            };
+            // The datasets are streamed from the query, also for the breakdown; only the cache holds all of them in memory.
+            if (breakdownRequested) {
+                breakdown = StorageSizeBreakdown.fetch(dbApi, dataset -> {
+                    if (matchesFilter(dataset.getStorage(), dataset.getFiles())) {
+                        consumer.accept(new DatasetStorageInfo(dataset.getPid(), dataset.getStorage(), dataset.getFiles()));
+                    }
+                });
+            }
+            else if (cacheFile != null) {
+                for (DatasetStorageInfo info : fetchResultsFromCache()) {
+                    consumer.accept(info);
+                }
+            }
+            else {
+                streamResults(consumer);
+            }
+            if (printer != null) {
+                printer.flush();
+            }
+            if (rows != null) {
+                rows.flush();
+                parquet.commit();
+            }
+        }
 
-                printer.printRecord(info.getPid(), storageOutput, info.getFiles());
+        if (driverReport != null) {
+            try (var out = OutputFiles.newPrintWriter(driverReport)) {
+                breakdown.writeDriverReport(out, this::formatStorage, StorageDrivers.fetchLabelsById(dataverseClient), defaultDriver);
+            }
+        }
+        if (collectionReport != null) {
+            try (var out = OutputFiles.newPrintWriter(collectionReport)) {
+                breakdown.writeCollectionReport(out, this::formatStorage);
             }
-            printer.flush();
+        }
+
+        if (sizeSummary != null) {
+            sizeSummary.print(new PrintWriter(System.out), "datasets");
         }
 
         return 0;
     }
 
-    private PrintWriter createOutputWriter() throws Exception {
-        if ("-".equals(outputFile)) {
-            return new PrintWriter(System.out, true);
+    private Object formatStorage(long storage) {
+        if (base != null) {
+            return String.format(Locale.ROOT, "%.1f", (double) storage / base.toBytes(1));
+        }
+        else {
+            return storage;
+        }
+    }
+
+    /**
+     * @return the storage size as a Double in the --base unit, or as a Long number of bytes, for the typed Parquet column
+     */
+    private Object storageValue(long storage) {
+        if (base != null) {
+            return (double) storage / base.toBytes(1);
         }
         else {
-            return new PrintWriter(outputFile);
+            return storage;
         }
     }
 
-    private List<DatasetStorageInfo> fetchResults() throws Exception {
+    private List<DatasetStorageInfo> fetchResultsFromCache() throws Exception {
+        var cache = StorageSizeCache.load(cacheFile);
+        cache.refresh(dbApi);
+        cache.save();
+
+        return filterAndSort(cache.getEntries().stream()
+            .map(e -> new DatasetStorageInfo(e.getPid(), e.getStorage(), e.getFiles())));
+    }
+
+    private List<DatasetStorageInfo> filterAndSort(Stream<DatasetStorageInfo> datasets) {
+        return datasets
+            .filter(d -> matchesFilter(d.getStorage(), d.getFiles()))
+            .sorted(Comparator.comparing(DatasetStorageInfo::getPid))
+            .toList();
+    }
+
+    private boolean matchesFilter(long storage, long files) {
+        // Same filter as the HAVING clause in streamResults, with a dataset without files counting as 0 bytes.
+        long minSizeBytes = minSize != null ? minSize.toBytes() : 0L;
+        long maxSizeBytes = maxSize != null ? maxSize.toBytes() : Long.MAX_VALUE;
+        long maxFilesNum = maxFiles != null ? maxFiles : Long.MAX_VALUE;
+        return storage >= minSizeBytes && storage <= maxSizeBytes && files >= minFiles && files <= maxFilesNum;
+    }
+
+    private void streamResults(PooledDatabase.RowConsumer<DatasetStorageInfo> consumer) throws Exception {
         // Since we want to count each datafile only once across versions for each dataset,
         // we use a subquery to find unique (dataset, datafile) pairs first.
         String query = """
@@ -152,9 +286,7 @@ public class DatasetsGetStorageSize extends AbstractDatabaseCmd implements Calla
                 throw new RuntimeException("Failed to map ResultSet row to DatasetStorageInfo", e);
             }
         })) {
-            List<Object[]> paramList = new ArrayList<>();
-            paramList.add(parameters);
-            return context.executeFor(paramList);
+            context.stream(parameters, consumer);
         }
     }
 }
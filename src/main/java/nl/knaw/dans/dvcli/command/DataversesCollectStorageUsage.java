@@ -15,8 +15,9 @@
  */
 package nl.knaw.dans.dvcli.command;
 
+import com.fasterxml.jackson.core.JsonGenerator;
 import com.fasterxml.jackson.databind.ObjectMapper;
-import com.fasterxml.jackson.databind.SerializationFeature;
+import io.dropwizard.util.Duration;
 import lombok.Data;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
@@ -31,9 +32,20 @@ import picocli.CommandLine.Option;
 
 import java.io.IOException;
 import java.io.PrintWriter;
+import java.net.URI;
+import java.nio.file.Path;
+import java.sql.ResultSet;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
 import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
@@ -44,19 +56,39 @@ import java.util.regex.Pattern;
 )
 @RequiredArgsConstructor
 @Slf4j
-public class DataversesCollectStorageUsage implements Callable<Integer> {
+public class DataversesCollectStorageUsage extends AbstractDatabaseCmd implements Callable<Integer> {
 
     private final DataverseClient dataverseClient;
+    private final PooledDatabase dbApi;
+    private final URI baseUrl;
 
     @Option(names = { "-m", "--max-depth" }, defaultValue = "1", description = "The max depth of the hierarchy to traverse")
     private int maxDepth;
 
-    @Option(names = { "-o", "--output-file" }, defaultValue = "-", description = "The file to write the output to or - for stdout")
+    @Option(names = { "-o", "--output-file" }, defaultValue = "-", description = "The file to write the output to or - for stdout; a .gz or .zst suffix compresses the output")
     private String outputFile;
 
-    @Option(names = { "-f", "--format" }, defaultValue = "json", description = "Output format, one of: csv, json (default: json)")
+    @Option(names = { "-f", "--format" }, defaultValue = "json", description = "Output format, one of: csv, json, jsonl (JSON Lines) (default: json)")
     private String format;
 
+    @Option(names = { "-s", "--source" }, defaultValue = "rest", description = "Where to get the storage sizes from, one of: rest, database (default: rest). "
+        + "The database source computes the sizes of all dataverses in one pass instead of one API call per dataverse")
+    private String source;
+
+    @Option(names = { "-c", "--concurrency" }, defaultValue = "1", description = "Maximum number of storage size API calls in progress at the same time (default: 1). "
+        + "The output order does not depend on this setting")
+    private int concurrency;
+
+    @Option(names = { "--cache" }, description = "JSON file in which the dataverse tree and storage sizes are cached between runs. "
+        + "The cache is created if it does not exist")
+    private Path cacheFile;
+
+    @Option(names = { "--cache-ttl" }, defaultValue = "6 hours", description = "How long cached values remain valid, e.g. '30 minutes' (default: 6 hours)")
+    private Duration cacheTtl;
+
+    @Option(names = { "--refresh" }, description = "Fetch everything again, ignoring cached values, and store the results in the cache")
+    private boolean refresh;
+
     @Data
     private static class StorageUsageRow {
         private final int depth;
@@ -66,44 +98,200 @@ public class DataversesCollectStorageUsage implements Callable<Integer> {
         private final long storagesize;
     }
 
+    @Data
+    private static class DataverseNode {
+        private final long id;
+        private final Long ownerId;
+        private final String alias;
+    }
+
     private final Pattern sizePattern = Pattern.compile("dataverse: (.+?) bytes");
 
+    private Map<String, Long> sizesFromDatabase;
+
+    private StorageUsageCache cache;
+
     @Override
-    public Integer call() throws Exception {
-        log.info("Extracting tree...");
-        MetricsTreeNode treeData = dataverseClient.metrics().tree().getData();
+    protected Integer doCall() throws Exception {
+        if (!"rest".equalsIgnoreCase(source) && !"database".equalsIgnoreCase(source)) {
+            System.err.println("Unknown source: " + source + "; must be one of: rest, database");
+            return 1;
+        }
+        if (concurrency < 1) {
+            System.err.println("--concurrency must be at least 1");
+            return 1;
+        }
+
+        if (cacheFile != null) {
+            cache = StorageUsageCache.load(cacheFile, String.valueOf(baseUrl), cacheTtl.toMilliseconds());
+        }
+
+        MetricsTreeNode treeData = getTree();
         String alias = treeData.getAlias();
         String name = treeData.getName();
         log.info("Extracted the tree for the toplevel dataverse: {} ({})", name, alias);
 
+        List<Callable<StorageUsageRow>> rows = new ArrayList<>();
+        collectChildrenSizes(treeData, maxDepth, 1, rows);
+
         try (ResultWriter writer = createResultWriter()) {
-            collectChildrenSizes(treeData, maxDepth, 1, writer);
+            writeRows(rows, writer);
+        }
+        finally {
+            if (cache != null) {
+                cache.save();
+            }
         }
 
         return 0;
     }
 
-    private void collectChildrenSizes(MetricsTreeNode parentData, int maxDepth, int depth, ResultWriter writer) throws IOException, DataverseException {
+    private MetricsTreeNode getTree() throws IOException, DataverseException {
+        if (cache != null && !refresh) {
+            MetricsTreeNode cached = cache.getTree();
+            if (cached != null) {
+                log.info("Using cached tree");
+                return cached;
+            }
+        }
+        log.info("Extracting tree...");
+        MetricsTreeNode treeData = dataverseClient.metrics().tree().getData();
+        if (cache != null) {
+            cache.putTree(treeData);
+        }
+        return treeData;
+    }
+
+    private void collectChildrenSizes(MetricsTreeNode parentData, int maxDepth, int depth, List<Callable<StorageUsageRow>> rows) {
         String parentAlias = parentData.getAlias();
         List<MetricsTreeNode> children = parentData.getChildren();
         if (children != null) {
             for (MetricsTreeNode child : children) {
-                writer.writeRow(getStorageUsageRow(parentAlias, child.getAlias(), child.getName(), depth));
+                rows.add(() -> getStorageUsageRow(parentAlias, child.getAlias(), child.getName(), depth));
                 if (depth < maxDepth) {
-                    collectChildrenSizes(child, maxDepth, depth + 1, writer);
+                    collectChildrenSizes(child, maxDepth, depth + 1, rows);
                 }
             }
         }
     }
 
-    private StorageUsageRow getStorageUsageRow(String parentAlias, String childAlias, String childName, int depth) throws IOException, DataverseException {
-        log.info("Retrieving size for dataverse: {} / {} ...", parentAlias, childAlias);
-        DataMessage msg = dataverseClient.dataverse(childAlias).getStorageSize().getData();
-        long storageSize = extractSize(msg.getMessage());
-        log.info("size: {}", storageSize);
+    /**
+     * Computes the rows and writes them in depth-first order. With a concurrency greater than 1, up to that many rows are computed at the same time; each row is
+     * written as soon as it and all rows before it are done.
+     */
+    private void writeRows(List<Callable<StorageUsageRow>> rows, ResultWriter writer) throws Exception {
+        if (concurrency == 1 || "database".equalsIgnoreCase(source)) {
+            for (Callable<StorageUsageRow> row : rows) {
+                writer.writeRow(row.call());
+            }
+            return;
+        }
+
+        ExecutorService executor = Executors.newFixedThreadPool(concurrency);
+        try {
+            List<Future<StorageUsageRow>> futures = new ArrayList<>();
+            for (Callable<StorageUsageRow> row : rows) {
+                futures.add(executor.submit(row));
+            }
+            for (Future<StorageUsageRow> future : futures) {
+                writer.writeRow(Futures.get(future));
+            }
+        }
+        finally {
+            executor.shutdownNow();
+        }
+    }
+
+    private StorageUsageRow getStorageUsageRow(String parentAlias, String childAlias, String childName, int depth) throws Exception {
+        Long cachedSize = cache != null && !refresh ? cache.getSize(childAlias) : null;
+        if (cachedSize != null) {
+            return new StorageUsageRow(depth, parentAlias, childAlias, childName, cachedSize);
+        }
+
+        long storageSize;
+        if ("database".equalsIgnoreCase(source)) {
+            if (sizesFromDatabase == null) {
+                log.info("Computing storage sizes from the database...");
+                sizesFromDatabase = fetchStorageSizesFromDatabase();
+                log.info("Computed storage sizes for {} dataverses", sizesFromDatabase.size());
+                if (cache != null) {
+                    sizesFromDatabase.forEach(cache::putSize);
+                }
+            }
+            storageSize = sizesFromDatabase.getOrDefault(childAlias, 0L);
+        }
+        else {
+            log.info("Retrieving size for dataverse: {} / {} ...", parentAlias, childAlias);
+            long start = System.nanoTime();
+            DataMessage msg = dataverseClient.dataverse(childAlias).getStorageSize().getData();
+            storageSize = extractSize(msg.getMessage());
+            log.info("size of {}: {} (retrieved in {} ms)", childAlias, storageSize, (System.nanoTime() - start) / 1_000_000);
+            if (cache != null) {
+                cache.putSize(childAlias, storageSize);
+            }
+        }
         return new StorageUsageRow(depth, parentAlias, childAlias, childName, storageSize);
     }
 
+    /**
+     * Computes the storage size of every dataverse, including its subdataverses, as the storagesize API does: the sum of the sizes of all datafiles in the datasets
+     * below it. The direct size of each dataverse is computed in a single query; the sizes are then added to all ancestors using the dataverse-to-owner map.
+     *
+     * @return the storage size per dataverse alias
+     * @throws Exception if a query fails
+     */
+    private Map<String, Long> fetchStorageSizesFromDatabase() throws Exception {
+        String dataversesQuery = """
+            SELECT dvo.id, dvo.owner_id, dv.alias
+            FROM dataverse dv
+                     JOIN dvobject dvo ON dv.id = dvo.id;
+            """;
+        Map<Long, DataverseNode> dataverses = new HashMap<>();
+        try (var context = dbApi.query(dataversesQuery, (ResultSet rs) -> {
+            try {
+                return new DataverseNode(rs.getLong("id"), rs.getObject("owner_id", Long.class), rs.getString("alias"));
+            }
+            catch (Exception e) {
+                throw new RuntimeException("Failed to map ResultSet row to DataverseNode", e);
+            }
+        })) {
+            for (DataverseNode node : context.executeFor(Collections.singletonList(new Object[0]))) {
+                dataverses.put(node.getId(), node);
+            }
+        }
+
+        String directSizesQuery = """
+            SELECT ds_dvo.owner_id    AS DATAVERSE_ID,
+                   SUM(df.filesize)   AS STORAGE
+            FROM datafile df
+                     JOIN dvobject df_dvo ON df.id = df_dvo.id
+                     JOIN dvobject ds_dvo ON df_dvo.owner_id = ds_dvo.id
+            GROUP BY ds_dvo.owner_id;
+            """;
+        Map<String, Long> sizes = new HashMap<>();
+        for (DataverseNode node : dataverses.values()) {
+            sizes.put(node.getAlias(), 0L);
+        }
+        try (var context = dbApi.query(directSizesQuery, (ResultSet rs) -> {
+            try {
+                return Map.entry(rs.getLong("DATAVERSE_ID"), rs.getLong("STORAGE"));
+            }
+            catch (Exception e) {
+                throw new RuntimeException("Failed to map ResultSet row to dataverse size", e);
+            }
+        })) {
+            for (var directSize : context.executeFor(Collections.singletonList(new Object[0]))) {
+                Set<Long> visited = new HashSet<>();
+                DataverseNode node = dataverses.get(directSize.getKey());
+                while (node != null && visited.add(node.getId())) {
+                    sizes.merge(node.getAlias(), directSize.getValue(), Long::sum);
+                    node = node.getOwnerId() != null ? dataverses.get(node.getOwnerId()) : null;
+                }
+            }
+        }
+        return sizes;
+    }
+
     private long extractSize(String message) {
         Matcher matcher = sizePattern.matcher(message);
         if (matcher.find()) {
@@ -121,10 +309,13 @@ public class DataversesCollectStorageUsage implements Callable<Integer> {
     }
 
     private ResultWriter createResultWriter() throws IOException {
-        PrintWriter out = createOutputWriter();
+        PrintWriter out = OutputFiles.newPrintWriter(outputFile);
         if ("csv".equalsIgnoreCase(format)) {
             return new CsvResultWriter(out);
         }
+        else if ("jsonl".equalsIgnoreCase(format)) {
+            return new JsonLinesResultWriter(out);
+        }
         else {
             return new JsonResultWriter(out);
         }
@@ -155,34 +346,52 @@ public class DataversesCollectStorageUsage implements Callable<Integer> {
         }
     }
 
+    /**
+     * Writes the rows as a JSON array, one element at a time, so that rows are visible while the command is running.
+     */
     private static class JsonResultWriter implements ResultWriter {
         private final PrintWriter out;
-        private final List<StorageUsageRow> results = new ArrayList<>();
+        private final ObjectMapper mapper = new ObjectMapper();
+        private final JsonGenerator generator;
 
-        public JsonResultWriter(PrintWriter out) {
+        public JsonResultWriter(PrintWriter out) throws IOException {
             this.out = out;
+            this.generator = mapper.getFactory().createGenerator(out);
+            generator.useDefaultPrettyPrinter();
+            generator.writeStartArray();
         }
 
         @Override
-        public void writeRow(StorageUsageRow row) {
-            results.add(row);
+        public void writeRow(StorageUsageRow row) throws IOException {
+            mapper.writeValue(generator, row);
+            generator.flush();
         }
 
         @Override
         public void close() throws IOException {
-            ObjectMapper mapper = new ObjectMapper();
-            mapper.enable(SerializationFeature.INDENT_OUTPUT);
-            out.print(mapper.writeValueAsString(results));
+            generator.writeEndArray();
+            generator.close();
             out.close();
         }
     }
 
-    private PrintWriter createOutputWriter() throws IOException {
-        if ("-".equals(outputFile)) {
-            return new PrintWriter(System.out, true);
+    /**
+     * Writes each row as a JSON object on its own line (JSON Lines). An interrupted run leaves a file in which every complete line is a valid row.
+     */
+    @RequiredArgsConstructor
+    private static class JsonLinesResultWriter implements ResultWriter {
+        private final PrintWriter out;
+        private final ObjectMapper mapper = new ObjectMapper();
+
+        @Override
+        public void writeRow(StorageUsageRow row) throws IOException {
+            out.println(mapper.writeValueAsString(row));
+            out.flush();
         }
-        else {
-            return new PrintWriter(outputFile);
+
+        @Override
+        public void close() {
+            out.close();
         }
     }
 }
@@ -0,0 +1,49 @@
+/*
+ * Copyright (C) 2026 DANS - Data Archiving and Networked Services (info@dans.knaw.nl)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.knaw.dans.dvcli.command;
+
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+
+/**
+ * Waits for the tasks that commands run on their own executors.
+ */
+public class Futures {
+
+    private Futures() {
+    }
+
+    /**
+     * Waits for the task and returns its result. If the task failed, the exception it failed with is thrown, rather than an {@link ExecutionException} that wraps
+     * it, so that the command reports the same error as when it runs the task itself.
+     *
+     * @param future the task
+     * @param <T>    the type of the result
+     * @return the result
+     * @throws Exception the exception the task failed with, or InterruptedException if the thread is interrupted while waiting
+     */
+    public static <T> T get(Future<T> future) throws Exception {
+        try {
+            return future.get();
+        }
+        catch (ExecutionException e) {
+            if (e.getCause() instanceof Exception cause) {
+                throw cause;
+            }
+            throw e;
+        }
+    }
+}
@@ -0,0 +1,34 @@
+/*
+ * Copyright (C) 2026 DANS - Data Archiving and Networked Services (info@dans.knaw.nl)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.knaw.dans.dvcli.command;
+
+import java.io.FilterInputStream;
+import java.io.InputStream;
+
+/**
+ * An input stream that ignores close. Commands that read from stdin, such as the bulk commands with <code>-i -</code>, close it when they are done; in the shell
+ * and batch commands, that must not close stdin for the commands that follow or for the shell itself.
+ */
+class NonClosingInputStream extends FilterInputStream {
+    NonClosingInputStream(InputStream in) {
+        super(in);
+    }
+
+    @Override
+    public void close() {
+        // Leave the underlying stream open
+    }
+}
@@ -0,0 +1,34 @@
+/*
+ * Copyright (C) 2026 DANS - Data Archiving and Networked Services (info@dans.knaw.nl)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.knaw.dans.dvcli.command;
+
+import java.io.OutputStream;
+import java.io.PrintStream;
+
+/**
+ * A print stream that only flushes when it is closed. Several commands close System.out when they are done; when many commands run in one process, as in the
+ * shell, batch and daemon commands, that must not close the standard streams for the commands that follow.
+ */
+class NonClosingPrintStream extends PrintStream {
+    NonClosingPrintStream(OutputStream out) {
+        super(out, true);
+    }
+
+    @Override
+    public void close() {
+        flush();
+    }
+}
@@ -0,0 +1,242 @@
+/*
+ * Copyright (C) 2026 DANS - Data Archiving and Networked Services (info@dans.knaw.nl)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.knaw.dans.dvcli.command;
+
+import lombok.Data;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.PrintStream;
+import java.sql.ResultSet;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Deletes all but the latest notifications of each user in small batches, so that no single transaction holds locks on many rows or produces a large burst of
+ * write-ahead log. Users are processed in order of their id. After each completed group of users the id of the last user is reported, so that an interrupted run
+ * can be resumed from the next id.
+ */
+@Slf4j
+@RequiredArgsConstructor
+public class NotificationTruncator {
+
+    @Data
+    public static class UserExcess {
+        private final long userId;
+        private final long notifications;
+        private final long excess;
+    }
+
+    @Data
+    private static class Cutoff {
+        private final long userId;
+        private final long id;
+    }
+
+    private final PooledDatabase dbApi;
+    private final int keep;
+    private final int batchSize;
+    private final long pauseMillis;
+    private final PrintStream progress;
+
+    /**
+     * Finds the users in the given id range that have more than the number of notifications to keep.
+     *
+     * @param fromUserId the first user id, inclusive
+     * @param toUserId   the last user id, inclusive
+     * @return the users, ordered by id
+     * @throws Exception if the query fails
+     */
+    public List<UserExcess> findUsersWithExcess(long fromUserId, long toUserId) throws Exception {
+        String query = """
+            SELECT user_id, COUNT(*) AS NOTIFICATIONS
+            FROM usernotification
+            WHERE user_id BETWEEN ? AND ?
+            GROUP BY user_id
+            HAVING COUNT(*) > ?
+            ORDER BY user_id;
+            """;
+
+        try (var context = dbApi.query(query, (ResultSet rs) -> {
+            try {
+                long notifications = rs.getLong("NOTIFICATIONS");
+                return new UserExcess(rs.getLong("user_id"), notifications, notifications - keep);
+            }
+            catch (Exception e) {
+                throw new RuntimeException("Failed to map ResultSet row to UserExcess", e);
+            }
+        })) {
+            return context.executeFor(Collections.singletonList(new Object[] { fromUserId, toUserId, keep }));
+        }
+    }
+
+    /**
+     * Deletes the excess notifications of the given users. Users are grouped so that each group has about one batch of notifications to delete; a user with more
+     * than one batch is a group on its own and is processed in several batches.
+     *
+     * @param users the users, ordered by id
+     * @return the number of deleted notifications
+     * @throws Exception if a statement fails
+     */
+    public long truncate(List<UserExcess> users) throws Exception {
+        return truncate(users, "");
+    }
+
+    /**
+     * Same as {@link #truncate(List)}, with a prefix for the progress messages, to tell apart partitions that are truncated in parallel.
+     *
+     * @param users  the users, ordered by id
+     * @param prefix the prefix for the progress messages
+     * @return the number of deleted notifications
+     * @throws Exception if a statement fails
+     */
+    public long truncate(List<UserExcess> users, String prefix) throws Exception {
+        long total = users.stream().mapToLong(UserExcess::getExcess).sum();
+        long deleted = 0;
+        List<Long> group = new ArrayList<>();
+        long groupExcess = 0;
+        for (int i = 0; i < users.size(); i++) {
+            UserExcess user = users.get(i);
+            group.add(user.getUserId());
+            groupExcess += user.getExcess();
+            boolean last = i == users.size() - 1;
+            if (last || groupExcess + users.get(i + 1).getExcess() > batchSize) {
+                deleted += truncateGroup(group);
+                progress.printf("%sDeleted %d of %d notifications; done up to user id %d%n", prefix, deleted, total, user.getUserId());
+                group.clear();
+                groupExcess = 0;
+                if (!last && pauseMillis > 0) {
+                    Thread.sleep(pauseMillis);
+                }
+            }
+        }
+        return deleted;
+    }
+
+    /**
+     * Splits the users into at most the given number of partitions of consecutive user ids, each with about the same number of notifications to delete.
+     *
+     * @param users         the users, ordered by id
+     * @param maxPartitions the maximum number of partitions
+     * @return the non-empty partitions, in order of user id
+     */
+    static List<List<UserExcess>> partition(List<UserExcess> users, int maxPartitions) {
+        long total = users.stream().mapToLong(UserExcess::getExcess).sum();
+        List<List<UserExcess>> partitions = new ArrayList<>();
+        List<UserExcess> current = new ArrayList<>();
+        long cumulative = 0;
+        for (UserExcess user : users) {
+            current.add(user);
+            cumulative += user.getExcess();
+            // Close the partition when the cumulative excess reaches its share of the total.
+            if (partitions.size() < maxPartitions - 1 && cumulative * maxPartitions >= total * (partitions.size() + 1)) {
+                partitions.add(current);
+                current = new ArrayList<>();
+            }
+        }
+        if (!current.isEmpty()) {
+            partitions.add(current);
+        }
+        return partitions;
+    }
+
+    private long truncateGroup(List<Long> userIds) throws Exception {
+        // The newest notification to delete of each user is determined once per group; the batches then walk through the older notifications in order of id,
+        // so that no batch has to rank the notifications of the users again.
+        List<Cutoff> cutoffs = fetchCutoffs(userIds);
+        Long[] cutoffUserIds = cutoffs.stream().map(Cutoff::getUserId).toArray(Long[]::new);
+        Long[] cutoffIds = cutoffs.stream().map(Cutoff::getId).toArray(Long[]::new);
+        long deleted = 0;
+        long lastId = 0;
+        while (!cutoffs.isEmpty()) {
+            List<Long> ids = deleteBatch(cutoffUserIds, cutoffIds, lastId);
+            deleted += ids.size();
+            if (ids.size() < batchSize) {
+                break;
+            }
+            lastId = Collections.max(ids);
+            if (pauseMillis > 0) {
+                Thread.sleep(pauseMillis);
+            }
+        }
+        return deleted;
+    }
+
+    private List<Cutoff> fetchCutoffs(List<Long> userIds) throws Exception {
+        // Notifications without a send date are ranked as the newest, as in the ORDER BY ... DESC of PostgreSQL.
+        String query = """
+            SELECT user_id, id
+            FROM (
+                SELECT id,
+                       user_id,
+                       ROW_NUMBER() OVER (PARTITION BY user_id ORDER BY COALESCE(senddate, 'infinity'::timestamp) DESC, id DESC) AS rn
+                FROM usernotification
+                WHERE user_id = ANY (?)
+            ) AS ranked
+            WHERE rn = ?;
+            """;
+
+        try (var context = dbApi.query(query, (ResultSet rs) -> {
+            try {
+                return new Cutoff(rs.getLong("user_id"), rs.getLong("id"));
+            }
+            catch (Exception e) {
+                throw new RuntimeException("Failed to map ResultSet row to Cutoff", e);
+            }
+        })) {
+            return context.executeFor(Collections.singletonList(new Object[] { userIds.toArray(new Long[0]), keep + 1 }));
+        }
+    }
+
+    private List<Long> deleteBatch(Long[] userIds, Long[] cutoffIds, long afterId) throws Exception {
+        // Runs as a single statement, and therefore in its own transaction. Deletes, for each user, the notifications that are not newer than the cutoff
+        // notification, in order of id, starting after the last id deleted by the previous batch.
+        String query = """
+            WITH cutoff AS (
+                SELECT c.user_id, COALESCE(cn.senddate, 'infinity'::timestamp) AS senddate, cn.id
+                FROM unnest(?::bigint[], ?::bigint[]) AS c(user_id, cutoff_id)
+                         JOIN usernotification cn ON cn.id = c.cutoff_id
+            ),
+            doomed AS (
+                SELECT un.id
+                FROM usernotification un
+                         JOIN cutoff c ON un.user_id = c.user_id
+                WHERE (COALESCE(un.senddate, 'infinity'::timestamp), un.id) <= (c.senddate, c.id)
+                  AND un.id > ?
+                ORDER BY un.id
+                LIMIT ?
+            )
+            DELETE FROM usernotification un
+            USING doomed
+            WHERE un.id = doomed.id
+            RETURNING un.id;
+            """;
+
+        try (var context = dbApi.query(query, (ResultSet rs) -> {
+            try {
+                return rs.getLong("id");
+            }
+            catch (Exception e) {
+                throw new RuntimeException("Failed to map ResultSet row to notification id", e);
+            }
+        })) {
+            List<Long> ids = context.executeFor(Collections.singletonList(new Object[] { userIds, cutoffIds, afterId, batchSize }));
+            log.debug("Deleted {} notifications of {} users", ids.size(), userIds.length);
+            return ids;
+        }
+    }
+}
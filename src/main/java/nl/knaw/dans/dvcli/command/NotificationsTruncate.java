@@ -15,13 +15,21 @@
  */
 package nl.knaw.dans.dvcli.command;
 
+import io.dropwizard.util.Duration;
 import lombok.RequiredArgsConstructor;
-import nl.knaw.dans.lib.dataverse.DatabaseApi;
-import nl.knaw.dans.lib.dataverse.DataverseClient;
+import org.apache.commons.csv.CSVFormat;
+import org.apache.commons.csv.CSVPrinter;
 import picocli.CommandLine.Command;
 import picocli.CommandLine.Option;
 
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 @Command(
     name = "notifications-truncate",
@@ -30,7 +38,7 @@ import java.util.concurrent.Callable;
 )
 @RequiredArgsConstructor
 public class NotificationsTruncate extends AbstractDatabaseCmd implements Callable<Integer> {
-    private final DatabaseApi dbApi;
+    private final PooledDatabase dbApi;
 
     @Option(names = {"--user"}, description = "User ID to truncate notifications for; if omitted, truncates for all users")
     private Integer userId;
@@ -38,16 +46,49 @@ public class NotificationsTruncate extends AbstractDatabaseCmd implements Callab
     @Option(names = {"--keep"}, required = true, description = "Number of latest notifications to keep per user")
     private int keep;
 
+    @Option(names = {"--from-user-id"}, defaultValue = "0", description = "Only truncate notifications of users with this id or higher; use this to resume an interrupted run")
+    private long fromUserId;
+
+    @Option(names = {"--to-user-id"}, defaultValue = "" + Long.MAX_VALUE, description = "Only truncate notifications of users with this id or lower")
+    private long toUserId;
+
+    @Option(names = {"--batch-size"}, defaultValue = "10000", description = "Maximum number of notifications deleted per transaction (default: 10000)")
+    private int batchSize;
+
+    @Option(names = {"--pause"}, defaultValue = "0 seconds", description = "Time to wait after each transaction, e.g. '500 milliseconds' (default: 0 seconds)")
+    private Duration pause;
+
+    @Option(names = {"--estimate"}, description = "Only report, per user and in total, how many notifications would be deleted, as CSV on stdout")
+    private boolean estimate;
+
+    @Option(names = {"--parallel"}, defaultValue = "1", description = "Number of partitions of users that are truncated at the same time, each on its own database "
+        + "connection (default: 1)")
+    private int parallel;
+
     @Override
     public Integer doCall() {
+        if (batchSize < 1) {
+            System.err.println("--batch-size must be at least 1");
+            return 1;
+        }
+        if (parallel < 1) {
+            System.err.println("--parallel must be at least 1");
+            return 1;
+        }
         try {
-            int deleted;
+            long from = userId != null ? userId : fromUserId;
+            long to = userId != null ? userId : toUserId;
+            var truncator = new NotificationTruncator(dbApi, keep, batchSize, pause.toMilliseconds(), System.err);
+            var users = truncator.findUsersWithExcess(from, to);
+            if (estimate) {
+                writeEstimate(users);
+                return 0;
+            }
+            long deleted = parallel == 1 ? truncator.truncate(users) : truncateInParallel(truncator, users);
             if (userId == null) {
-                deleted = dbApi.truncateNotificationsForAllUsers(keep);
                 System.out.printf("Truncated notifications for all users; kept %d per user; deleted %d records in total%n", keep, deleted);
             }
             else {
-                deleted = dbApi.truncateNotificationsForUser(userId, keep);
                 System.out.printf("Truncated notifications for user %d; kept %d; deleted %d records%n", userId, keep, deleted);
             }
             return 0;
@@ -57,4 +98,40 @@ public class NotificationsTruncate extends AbstractDatabaseCmd implements Callab
             return 1;
         }
     }
+
+    private void writeEstimate(List<NotificationTruncator.UserExcess> users) throws IOException {
+        long total = 0;
+        var out = new PrintWriter(System.out);
+        var printer = new CSVPrinter(out, CSVFormat.DEFAULT.builder()
+            .setHeader("USER_ID", "NOTIFICATIONS", "DELETABLE")
+            .get());
+        for (var user : users) {
+            printer.printRecord(user.getUserId(), user.getNotifications(), user.getExcess());
+            total += user.getExcess();
+        }
+        printer.flush();
+        System.err.printf("%d notifications of %d users would be deleted; keeping %d per user%n", total, users.size(), keep);
+    }
+
+    private long truncateInParallel(NotificationTruncator truncator, List<NotificationTruncator.UserExcess> users) throws Exception {
+        var partitions = NotificationTruncator.partition(users, parallel);
+        dbApi.ensureCapacity(partitions.size());
+        ExecutorService executor = Executors.newFixedThreadPool(Math.max(1, partitions.size()));
+        try {
+            List<Future<Long>> futures = new ArrayList<>();
+            for (int i = 0; i < partitions.size(); i++) {
+                var partition = partitions.get(i);
+                var prefix = String.format("[partition %d, user ids %d-%d] ", i + 1, partition.get(0).getUserId(), partition.get(partition.size() - 1).getUserId());
+                futures.add(executor.submit(() -> truncator.truncate(partition, prefix)));
+            }
+            long deleted = 0;
+            for (Future<Long> future : futures) {
+                deleted += Futures.get(future);
+            }
+            return deleted;
+        }
+        finally {
+            executor.shutdownNow();
+        }
+    }
 }
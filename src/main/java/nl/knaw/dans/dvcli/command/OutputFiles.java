@@ -0,0 +1,117 @@
+/*
+ * Copyright (C) 2026 DANS - Data Archiving and Networked Services (info@dans.knaw.nl)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.knaw.dans.dvcli.command;
+
+import com.github.luben.zstd.ZstdOutputStream;
+
+import java.io.BufferedOutputStream;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Opens report output files. Files whose name ends in <code>.gz</code> or <code>.zst</code> are compressed while they are written, so that large reports do not
+ * need a separate compression pass. Concatenating compressed files yields a valid compressed file for both formats.
+ */
+public class OutputFiles {
+    private static final int BUFFER_SIZE = 1024 * 1024;
+    private static final String GZIP_SUFFIX = ".gz";
+    private static final String ZSTD_SUFFIX = ".zst";
+
+    private OutputFiles() {
+    }
+
+    /**
+     * Makes sure the file name ends with the given extension, optionally followed by a compression suffix. For example, with extension <code>.csv</code> the name
+     * <code>report</code> becomes <code>report.csv</code> and <code>report.gz</code> becomes <code>report.csv.gz</code>.
+     *
+     * @param name      the file name
+     * @param extension the extension, including the dot
+     * @return the file name with the extension
+     */
+    public static String withExtension(String name, String extension) {
+        String compressionSuffix = getCompressionSuffix(name);
+        String base = name.substring(0, name.length() - compressionSuffix.length());
+        if (!base.toLowerCase().endsWith(extension)) {
+            base += extension;
+        }
+        return base + compressionSuffix;
+    }
+
+    public static File withExtension(File file, String extension) {
+        return new File(file.getParentFile(), withExtension(file.getName(), extension));
+    }
+
+    /**
+     * Opens a report output file, or stdout.
+     *
+     * @param name the name of the file, or <code>-</code> for stdout
+     * @return the writer
+     * @throws IOException if the file cannot be created
+     */
+    public static PrintWriter newPrintWriter(String name) throws IOException {
+        if ("-".equals(name)) {
+            return new PrintWriter(System.out, true);
+        }
+        return newPrintWriter(new File(name));
+    }
+
+    public static PrintWriter newPrintWriter(File file) throws IOException {
+        return new PrintWriter(new BufferedWriter(new OutputStreamWriter(newOutputStream(file), StandardCharsets.UTF_8), BUFFER_SIZE));
+    }
+
+    public static OutputStream newOutputStream(File file) throws IOException {
+        OutputStream out = new BufferedOutputStream(Files.newOutputStream(file.toPath()), BUFFER_SIZE);
+        String suffix = getCompressionSuffix(file.getName());
+        try {
+            if (GZIP_SUFFIX.equalsIgnoreCase(suffix)) {
+                return new GZIPOutputStream(out, BUFFER_SIZE);
+            }
+            else if (ZSTD_SUFFIX.equalsIgnoreCase(suffix)) {
+                var zstd = new ZstdOutputStream(out);
+                // Let the native library compress on background threads, so that compression does not slow down reading the results.
+                zstd.setWorkers(Math.max(1, Runtime.getRuntime().availableProcessors() / 2));
+                return zstd;
+            }
+            return out;
+        }
+        catch (IOException e) {
+            out.close();
+            throw e;
+        }
+    }
+
+    public static boolean isCompressed(String name) {
+        return !getCompressionSuffix(name).isEmpty();
+    }
+
+    private static String getCompressionSuffix(String name) {
+        String lowerCaseName = name.toLowerCase();
+        if (lowerCaseName.endsWith(GZIP_SUFFIX)) {
+            return name.substring(name.length() - GZIP_SUFFIX.length());
+        }
+        else if (lowerCaseName.endsWith(ZSTD_SUFFIX)) {
+            return name.substring(name.length() - ZSTD_SUFFIX.length());
+        }
+        return "";
+    }
+}
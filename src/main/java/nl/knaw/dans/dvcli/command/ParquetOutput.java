@@ -0,0 +1,813 @@
+/*
+ * Copyright (C) 2026 DANS - Data Archiving and Networked Services (info@dans.knaw.nl)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.knaw.dans.dvcli.command;
+
+import com.github.luben.zstd.Zstd;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.time.Instant;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Writes report output as Parquet, row by row while the report rows are read. Each {@link RowWriter} buffers its rows per column until they fill a row group of
+ * about {@link #ROW_GROUP_SIZE} bytes, and then writes the row group as one zstd-compressed data page per column, so that memory use does not depend on the size
+ * of the report. Several row writers, for example one per partition of a report, can fill row groups of the same file in parallel.
+ * <p>
+ * All columns are optional, with RLE-encoded definition levels. Strings are written as UTF-8 byte arrays, timestamps as int64 milliseconds since the epoch in
+ * UTC. String columns, such as PIDs and checksum types, are dictionary-encoded: each column chunk starts with a dictionary page of the distinct values, and the
+ * data page holds RLE_DICTIONARY-encoded indexes into it. If the dictionary of a column chunk grows beyond {@link #MAX_DICTIONARY_SIZE} bytes, because the
+ * values hardly repeat, that chunk is PLAIN-encoded instead. Numbers and timestamps are always PLAIN-encoded. This is only the subset of the format that the
+ * reports need; the file metadata is written with the Thrift compact protocol that the format prescribes.
+ */
+public class ParquetOutput implements Closeable {
+    public static final String FORMAT_CSV = "csv";
+    public static final String FORMAT_PARQUET = "parquet";
+    public static final String EXTENSION = ".parquet";
+    static final int ROW_GROUP_SIZE = 16 * 1024 * 1024;
+    static final int MAX_DICTIONARY_SIZE = 1024 * 1024;
+    private static final int BUFFER_SIZE = 1024 * 1024;
+    private static final int COMPRESSION_LEVEL = 3;
+    private static final byte[] MAGIC = "PAR1".getBytes(StandardCharsets.US_ASCII);
+
+    // Values of the enums in parquet.thrift
+    private static final int TYPE_INT64 = 2;
+    private static final int TYPE_DOUBLE = 5;
+    private static final int TYPE_BYTE_ARRAY = 6;
+    private static final int REPETITION_OPTIONAL = 1;
+    private static final int CONVERTED_TYPE_UTF8 = 0;
+    private static final int CONVERTED_TYPE_TIMESTAMP_MILLIS = 9;
+    private static final int ENCODING_PLAIN = 0;
+    private static final int ENCODING_RLE = 3;
+    private static final int ENCODING_RLE_DICTIONARY = 8;
+    private static final int CODEC_ZSTD = 6;
+    private static final int PAGE_TYPE_DATA_PAGE = 0;
+    private static final int PAGE_TYPE_DICTIONARY_PAGE = 2;
+
+    public enum ColumnType {
+        STRING(TYPE_BYTE_ARRAY),
+        INT64(TYPE_INT64),
+        DOUBLE(TYPE_DOUBLE),
+        TIMESTAMP(TYPE_INT64);
+
+        private final int physicalType;
+
+        ColumnType(int physicalType) {
+            this.physicalType = physicalType;
+        }
+    }
+
+    private static class Column {
+        private final String name;
+        private final ColumnType type;
+
+        private Column(String name, ColumnType type) {
+            this.name = name;
+            this.type = type;
+        }
+    }
+
+    private static class ColumnChunk {
+        private final Column column;
+        private final long dictionaryPageOffset;
+        private final long dataPageOffset;
+        private final long numValues;
+        private final long numNulls;
+        private final long uncompressedSize;
+        private final long compressedSize;
+        private final byte[] min;
+        private final byte[] max;
+
+        private ColumnChunk(Column column, long dictionaryPageOffset, long dataPageOffset, long numValues, long numNulls, long uncompressedSize, long compressedSize,
+            byte[] min, byte[] max) {
+            this.column = column;
+            this.dictionaryPageOffset = dictionaryPageOffset;
+            this.dataPageOffset = dataPageOffset;
+            this.numValues = numValues;
+            this.numNulls = numNulls;
+            this.uncompressedSize = uncompressedSize;
+            this.compressedSize = compressedSize;
+            this.min = min;
+            this.max = max;
+        }
+
+        private boolean isDictionaryEncoded() {
+            return dictionaryPageOffset >= 0;
+        }
+
+        private long startOffset() {
+            return isDictionaryEncoded() ? dictionaryPageOffset : dataPageOffset;
+        }
+    }
+
+    private static class RowGroup {
+        private final List<ColumnChunk> columnChunks;
+        private final long numRows;
+
+        private RowGroup(List<ColumnChunk> columnChunks, long numRows) {
+            this.columnChunks = columnChunks;
+            this.numRows = numRows;
+        }
+    }
+
+    private final File parquetFile;
+    private final List<Column> columns = new ArrayList<>();
+    private final List<RowGroup> rowGroups = new ArrayList<>();
+    private OutputStream out;
+    private long position;
+    private boolean committed;
+
+    /**
+     * @param outputFile the output file given by the user; <code>.parquet</code> is appended to the name if it does not end with it yet
+     * @throws IllegalArgumentException if the name has a compression suffix; Parquet compresses per column, so a .gz or .zst file would only be harder to read
+     */
+    public ParquetOutput(File outputFile) {
+        if (OutputFiles.isCompressed(outputFile.getName())) {
+            throw new IllegalArgumentException("Parquet output is compressed internally; remove the compression suffix from " + outputFile);
+        }
+        this.parquetFile = OutputFiles.withExtension(outputFile, EXTENSION);
+    }
+
+    /**
+     * Checks the value of a <code>--format</code> option.
+     *
+     * @param format the format
+     * @return whether the format is Parquet
+     * @throws IllegalArgumentException if the format is neither csv nor parquet
+     */
+    public static boolean isParquet(String format) {
+        if (FORMAT_PARQUET.equalsIgnoreCase(format)) {
+            return true;
+        }
+        if (FORMAT_CSV.equalsIgnoreCase(format)) {
+            return false;
+        }
+        throw new IllegalArgumentException("Unknown format: " + format + "; expected csv or parquet");
+    }
+
+    /**
+     * Declares the next column. All columns must be declared before the file is opened.
+     *
+     * @param name the column name
+     * @param type the column type
+     * @return this
+     */
+    public ParquetOutput column(String name, ColumnType type) {
+        if (out != null) {
+            throw new IllegalStateException("Columns must be declared before the file is opened");
+        }
+        columns.add(new Column(name, type));
+        return this;
+    }
+
+    public File getParquetFile() {
+        return parquetFile;
+    }
+
+    /**
+     * Creates the Parquet file.
+     *
+     * @return this
+     * @throws IOException if the file cannot be created
+     */
+    public synchronized ParquetOutput open() throws IOException {
+        out = new BufferedOutputStream(Files.newOutputStream(parquetFile.toPath()), BUFFER_SIZE);
+        write(MAGIC);
+        return this;
+    }
+
+    /**
+     * Creates a writer for rows. A row writer must only be used by one thread at a time, but each thread can have its own.
+     *
+     * @return the row writer
+     */
+    public RowWriter newRowWriter() {
+        if (out == null) {
+            throw new IllegalStateException("The file must be opened before rows are written");
+        }
+        return new RowWriter();
+    }
+
+    /**
+     * Writes the file metadata and closes the file. All row writers must have been closed or flushed before.
+     *
+     * @throws IOException if the metadata cannot be written
+     */
+    public synchronized void commit() throws IOException {
+        byte[] metadata = fileMetadata();
+        write(metadata);
+        write(littleEndian(metadata.length, 4));
+        write(MAGIC);
+        out.close();
+        committed = true;
+    }
+
+    /**
+     * Closes the file. If it was not committed, for example because reading the report failed, the incomplete file is deleted.
+     *
+     * @throws IOException if the file cannot be closed or deleted
+     */
+    @Override
+    public synchronized void close() throws IOException {
+        if (committed || out == null) {
+            return;
+        }
+        try {
+            out.close();
+        }
+        finally {
+            Files.deleteIfExists(parquetFile.toPath());
+        }
+    }
+
+    /**
+     * Buffers rows and writes them to the file in row groups.
+     */
+    public class RowWriter implements Closeable {
+        private final ColumnBuffer[] buffers;
+        private long numRows;
+
+        private RowWriter() {
+            buffers = new ColumnBuffer[columns.size()];
+            for (int i = 0; i < buffers.length; i++) {
+                buffers[i] = new ColumnBuffer(columns.get(i));
+            }
+        }
+
+        /**
+         * Writes a row. Strings are written with {@link Object#toString()}, numbers must be {@link Number}s and timestamps {@link Date}s (including
+         * {@link java.sql.Timestamp}s) or {@link Instant}s; null values are allowed in every column.
+         *
+         * @param values the values, in the order of the columns
+         * @throws IOException if a row group cannot be written
+         */
+        public void write(Object... values) throws IOException {
+            if (values.length != buffers.length) {
+                throw new IllegalArgumentException("Expected " + buffers.length + " values, got " + values.length);
+            }
+            long size = 0;
+            for (int i = 0; i < buffers.length; i++) {
+                buffers[i].add(values[i]);
+                size += buffers[i].size();
+            }
+            numRows++;
+            if (size >= ROW_GROUP_SIZE) {
+                flush();
+            }
+        }
+
+        /**
+         * Writes the buffered rows, if any, as a row group.
+         *
+         * @throws IOException if the row group cannot be written
+         */
+        public void flush() throws IOException {
+            if (numRows == 0) {
+                return;
+            }
+            // Pages are compressed before taking the lock on the file, so that row writers on other threads only wait for each other's I/O.
+            for (ColumnBuffer buffer : buffers) {
+                buffer.compressPages();
+            }
+            writeRowGroup(buffers, numRows);
+            for (ColumnBuffer buffer : buffers) {
+                buffer.reset();
+            }
+            numRows = 0;
+        }
+
+        @Override
+        public void close() throws IOException {
+            flush();
+        }
+    }
+
+    private static class ColumnBuffer {
+        private final Column column;
+        private final ByteArrayOutputStream values = new ByteArrayOutputStream();
+        private final ByteArrayOutputStream definitionLevels = new ByteArrayOutputStream();
+        private int runLevel = -1;
+        private int runLength;
+        private long numValues;
+        private long numNulls;
+        private long min;
+        private long max;
+        // The dictionary of a string column chunk, or null if the chunk is PLAIN-encoded
+        private Map<String, Integer> dictionary;
+        private final List<byte[]> dictionaryValues = new ArrayList<>();
+        private long dictionarySize;
+        private int[] indexes = new int[1024];
+        private int numIndexes;
+        private byte[] dictionaryPage;
+        private int uncompressedDictionaryPageSize;
+        private byte[] dataPage;
+        private int uncompressedDataPageSize;
+
+        private ColumnBuffer(Column column) {
+            this.column = column;
+            reset();
+        }
+
+        private void add(Object value) {
+            // The maximum definition level is 1, so a null has level 0 and a value level 1. Runs of equal levels are written as RLE runs.
+            int level = value == null ? 0 : 1;
+            if (level != runLevel) {
+                endRun();
+                runLevel = level;
+            }
+            runLength++;
+            numValues++;
+            if (value == null) {
+                numNulls++;
+                return;
+            }
+            switch (column.type) {
+                case STRING:
+                    addString(value.toString());
+                    break;
+                case INT64:
+                    addLong(toLong(value));
+                    break;
+                case DOUBLE:
+                    values.writeBytes(littleEndian(Double.doubleToLongBits(toNumber(value).doubleValue()), 8));
+                    break;
+                case TIMESTAMP:
+                    addLong(toEpochMillis(value));
+                    break;
+            }
+        }
+
+        private void addString(String value) {
+            if (dictionary == null) {
+                addPlain(value.getBytes(StandardCharsets.UTF_8));
+                return;
+            }
+            Integer index = dictionary.get(value);
+            if (index == null) {
+                byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+                if (dictionarySize + 4 + bytes.length > MAX_DICTIONARY_SIZE) {
+                    fallBackToPlain();
+                    addPlain(bytes);
+                    return;
+                }
+                index = dictionaryValues.size();
+                dictionary.put(value, index);
+                dictionaryValues.add(bytes);
+                dictionarySize += 4 + bytes.length;
+            }
+            if (numIndexes == indexes.length) {
+                indexes = Arrays.copyOf(indexes, indexes.length * 2);
+            }
+            indexes[numIndexes++] = index;
+        }
+
+        private void addPlain(byte[] bytes) {
+            values.writeBytes(littleEndian(bytes.length, 4));
+            values.writeBytes(bytes);
+        }
+
+        /**
+         * Writes the values that were added so far as PLAIN-encoded values and drops the dictionary, so that the rest of the column chunk is PLAIN-encoded as well.
+         */
+        private void fallBackToPlain() {
+            for (int i = 0; i < numIndexes; i++) {
+                addPlain(dictionaryValues.get(indexes[i]));
+            }
+            dictionary = null;
+            dictionaryValues.clear();
+            dictionarySize = 0;
+            numIndexes = 0;
+        }
+
+        private void addLong(long value) {
+            values.writeBytes(littleEndian(value, 8));
+            min = Math.min(min, value);
+            max = Math.max(max, value);
+        }
+
+        private void endRun() {
+            if (runLength > 0) {
+                writeUnsignedVarInt(definitionLevels, (long) runLength << 1);
+                definitionLevels.write(runLevel);
+            }
+            runLength = 0;
+        }
+
+        private long size() {
+            return values.size() + definitionLevels.size() + dictionarySize + 4L * numIndexes;
+        }
+
+        private boolean isDictionaryEncoded() {
+            // A chunk without any values has nothing to put in a dictionary
+            return dictionary != null && !dictionary.isEmpty();
+        }
+
+        private void compressPages() {
+            endRun();
+            runLevel = -1;
+            var page = new ByteArrayOutputStream(Math.toIntExact(size() + 5));
+            page.writeBytes(littleEndian(definitionLevels.size(), 4));
+            page.writeBytes(definitionLevels.toByteArray());
+            if (isDictionaryEncoded()) {
+                var dictionaryValuesPage = new ByteArrayOutputStream(Math.toIntExact(dictionarySize));
+                for (byte[] value : dictionaryValues) {
+                    dictionaryValuesPage.writeBytes(littleEndian(value.length, 4));
+                    dictionaryValuesPage.writeBytes(value);
+                }
+                uncompressedDictionaryPageSize = dictionaryValuesPage.size();
+                dictionaryPage = Zstd.compress(dictionaryValuesPage.toByteArray(), COMPRESSION_LEVEL);
+
+                int bitWidth = 32 - Integer.numberOfLeadingZeros(dictionaryValues.size() - 1);
+                page.write(bitWidth);
+                writeRleBitPackedHybrid(page, indexes, numIndexes, bitWidth);
+            }
+            else {
+                dictionaryPage = null;
+                page.writeBytes(values.toByteArray());
+            }
+            uncompressedDataPageSize = page.size();
+            dataPage = Zstd.compress(page.toByteArray(), COMPRESSION_LEVEL);
+        }
+
+        private boolean hasMinMax() {
+            return numValues > numNulls && (column.type == ColumnType.INT64 || column.type == ColumnType.TIMESTAMP);
+        }
+
+        private void reset() {
+            values.reset();
+            definitionLevels.reset();
+            runLevel = -1;
+            runLength = 0;
+            numValues = 0;
+            numNulls = 0;
+            min = Long.MAX_VALUE;
+            max = Long.MIN_VALUE;
+            dictionary = column.type == ColumnType.STRING ? new HashMap<>() : null;
+            dictionaryValues.clear();
+            dictionarySize = 0;
+            numIndexes = 0;
+            dictionaryPage = null;
+            dataPage = null;
+        }
+
+        private static Number toNumber(Object value) {
+            if (value instanceof Number) {
+                return (Number) value;
+            }
+            throw new IllegalArgumentException("Not a number: " + value);
+        }
+
+        private static long toLong(Object value) {
+            return toNumber(value).longValue();
+        }
+
+        private static long toEpochMillis(Object value) {
+            if (value instanceof Date) {
+                return ((Date) value).getTime();
+            }
+            if (value instanceof Instant) {
+                return ((Instant) value).toEpochMilli();
+            }
+            throw new IllegalArgumentException("Not a timestamp: " + value);
+        }
+    }
+
+    private synchronized void writeRowGroup(ColumnBuffer[] buffers, long numRows) throws IOException {
+        if (out == null || committed) {
+            throw new IllegalStateException("The file is not open");
+        }
+        List<ColumnChunk> columnChunks = new ArrayList<>();
+        for (ColumnBuffer buffer : buffers) {
+            long dictionaryPageOffset = -1;
+            long uncompressedSize = 0;
+            long compressedSize = 0;
+            if (buffer.dictionaryPage != null) {
+                byte[] pageHeader = dictionaryPageHeader(buffer.uncompressedDictionaryPageSize, buffer.dictionaryPage.length, buffer.dictionaryValues.size());
+                dictionaryPageOffset = position;
+                write(pageHeader);
+                write(buffer.dictionaryPage);
+                uncompressedSize += pageHeader.length + buffer.uncompressedDictionaryPageSize;
+                compressedSize += pageHeader.length + buffer.dictionaryPage.length;
+            }
+            byte[] pageHeader = dataPageHeader(buffer.uncompressedDataPageSize, buffer.dataPage.length, buffer.numValues,
+                buffer.dictionaryPage != null ? ENCODING_RLE_DICTIONARY : ENCODING_PLAIN);
+            long dataPageOffset = position;
+            write(pageHeader);
+            write(buffer.dataPage);
+            uncompressedSize += pageHeader.length + buffer.uncompressedDataPageSize;
+            compressedSize += pageHeader.length + buffer.dataPage.length;
+            columnChunks.add(new ColumnChunk(buffer.column, dictionaryPageOffset, dataPageOffset, buffer.numValues, buffer.numNulls, uncompressedSize,
+                compressedSize, buffer.hasMinMax() ? littleEndian(buffer.min, 8) : null, buffer.hasMinMax() ? littleEndian(buffer.max, 8) : null));
+        }
+        rowGroups.add(new RowGroup(columnChunks, numRows));
+    }
+
+    private void write(byte[] bytes) throws IOException {
+        out.write(bytes);
+        position += bytes.length;
+    }
+
+    private static byte[] dictionaryPageHeader(int uncompressedSize, int compressedSize, int numValues) {
+        var thrift = new ThriftCompactWriter();
+        thrift.i32(1, PAGE_TYPE_DICTIONARY_PAGE);
+        thrift.i32(2, uncompressedSize);
+        thrift.i32(3, compressedSize);
+        thrift.beginStruct(7);
+        thrift.i32(1, numValues);
+        thrift.i32(2, ENCODING_PLAIN);
+        thrift.endStruct();
+        return thrift.toByteArray();
+    }
+
+    private static byte[] dataPageHeader(int uncompressedSize, int compressedSize, long numValues, int encoding) {
+        var thrift = new ThriftCompactWriter();
+        thrift.i32(1, PAGE_TYPE_DATA_PAGE);
+        thrift.i32(2, uncompressedSize);
+        thrift.i32(3, compressedSize);
+        thrift.beginStruct(5);
+        thrift.i32(1, Math.toIntExact(numValues));
+        thrift.i32(2, encoding);
+        thrift.i32(3, ENCODING_RLE);
+        thrift.i32(4, ENCODING_RLE);
+        thrift.endStruct();
+        return thrift.toByteArray();
+    }
+
+    private byte[] fileMetadata() {
+        var thrift = new ThriftCompactWriter();
+        thrift.i32(1, 1);
+        thrift.beginList(2, ThriftCompactWriter.STRUCT, columns.size() + 1);
+        thrift.beginStruct();
+        thrift.string(4, "schema");
+        thrift.i32(5, columns.size());
+        thrift.endStruct();
+        for (Column column : columns) {
+            thrift.beginStruct();
+            thrift.i32(1, column.type.physicalType);
+            thrift.i32(3, REPETITION_OPTIONAL);
+            thrift.string(4, column.name);
+            if (column.type == ColumnType.STRING) {
+                thrift.i32(6, CONVERTED_TYPE_UTF8);
+                // LogicalType.STRING
+                thrift.beginStruct(10);
+                thrift.beginStruct(1);
+                thrift.endStruct();
+                thrift.endStruct();
+            }
+            else if (column.type == ColumnType.TIMESTAMP) {
+                thrift.i32(6, CONVERTED_TYPE_TIMESTAMP_MILLIS);
+                // LogicalType.TIMESTAMP with isAdjustedToUTC and unit MILLIS
+                thrift.beginStruct(10);
+                thrift.beginStruct(8);
+                thrift.bool(1, true);
+                thrift.beginStruct(2);
+                thrift.beginStruct(1);
+                thrift.endStruct();
+                thrift.endStruct();
+                thrift.endStruct();
+                thrift.endStruct();
+            }
+            thrift.endStruct();
+        }
+        thrift.i64(3, rowGroups.stream().mapToLong(r -> r.numRows).sum());
+        thrift.beginList(4, ThriftCompactWriter.STRUCT, rowGroups.size());
+        for (RowGroup rowGroup : rowGroups) {
+            thrift.beginStruct();
+            thrift.beginList(1, ThriftCompactWriter.STRUCT, rowGroup.columnChunks.size());
+            for (ColumnChunk chunk : rowGroup.columnChunks) {
+                thrift.beginStruct();
+                thrift.i64(2, chunk.startOffset());
+                thrift.beginStruct(3);
+                thrift.i32(1, chunk.column.type.physicalType);
+                // PLAIN is also the encoding of the dictionary page
+                thrift.beginList(2, ThriftCompactWriter.I32, chunk.isDictionaryEncoded() ? 3 : 2);
+                thrift.i32Element(ENCODING_PLAIN);
+                thrift.i32Element(ENCODING_RLE);
+                if (chunk.isDictionaryEncoded()) {
+                    thrift.i32Element(ENCODING_RLE_DICTIONARY);
+                }
+                thrift.beginList(3, ThriftCompactWriter.BINARY, 1);
+                thrift.stringElement(chunk.column.name);
+                thrift.i32(4, CODEC_ZSTD);
+                thrift.i64(5, chunk.numValues);
+                thrift.i64(6, chunk.uncompressedSize);
+                thrift.i64(7, chunk.compressedSize);
+                thrift.i64(9, chunk.dataPageOffset);
+                if (chunk.isDictionaryEncoded()) {
+                    thrift.i64(11, chunk.dictionaryPageOffset);
+                }
+                thrift.beginStruct(12);
+                thrift.i64(3, chunk.numNulls);
+                if (chunk.max != null) {
+                    thrift.binary(5, chunk.max);
+                    thrift.binary(6, chunk.min);
+                }
+                thrift.endStruct();
+                thrift.endStruct();
+                thrift.endStruct();
+            }
+            thrift.i64(2, rowGroup.columnChunks.stream().mapToLong(c -> c.uncompressedSize).sum());
+            thrift.i64(3, rowGroup.numRows);
+            thrift.i64(5, rowGroup.columnChunks.get(0).startOffset());
+            thrift.i64(6, rowGroup.columnChunks.stream().mapToLong(c -> c.compressedSize).sum());
+            thrift.endStruct();
+        }
+        thrift.string(6, "dd-dv-cli");
+        return thrift.toByteArray();
+    }
+
+    private static byte[] littleEndian(long value, int numBytes) {
+        byte[] bytes = new byte[numBytes];
+        for (int i = 0; i < numBytes; i++) {
+            bytes[i] = (byte) (value >>> (8 * i));
+        }
+        return bytes;
+    }
+
+    /**
+     * Writes values with the RLE/bit-packing hybrid encoding. Runs of at least 8 equal values are written as RLE runs and the values in between are bit-packed
+     * in groups of 8. Only the last bit-packed run is padded, because the reader knows the number of values from the page header.
+     */
+    private static void writeRleBitPackedHybrid(ByteArrayOutputStream out, int[] values, int numValues, int bitWidth) {
+        int literalStart = 0;
+        int runStart = 0;
+        while (runStart < numValues) {
+            int runEnd = runStart + 1;
+            while (runEnd < numValues && values[runEnd] == values[runStart]) {
+                runEnd++;
+            }
+            // A bit-packed run must hold a multiple of 8 values, so the first values of an RLE run complete the last group of the preceding bit-packed run.
+            int numLiterals = runStart - literalStart;
+            int fill = (8 - numLiterals % 8) % 8;
+            if (runEnd - runStart - fill >= 8) {
+                writeBitPacked(out, values, literalStart, numLiterals + fill, bitWidth);
+                writeUnsignedVarInt(out, (long) (runEnd - runStart - fill) << 1);
+                out.writeBytes(littleEndian(values[runStart], (bitWidth + 7) / 8));
+                literalStart = runEnd;
+            }
+            runStart = runEnd;
+        }
+        writeBitPacked(out, values, literalStart, numValues - literalStart, bitWidth);
+    }
+
+    private static void writeBitPacked(ByteArrayOutputStream out, int[] values, int start, int count, int bitWidth) {
+        if (count == 0) {
+            return;
+        }
+        int numGroups = (count + 7) / 8;
+        writeUnsignedVarInt(out, (long) numGroups << 1 | 1);
+        long bits = 0;
+        int numBits = 0;
+        for (int i = 0; i < numGroups * 8; i++) {
+            long value = i < count ? values[start + i] : 0;
+            bits |= value << numBits;
+            numBits += bitWidth;
+            while (numBits >= 8) {
+                out.write((int) (bits & 0xFF));
+                bits >>>= 8;
+                numBits -= 8;
+            }
+        }
+    }
+
+    private static void writeUnsignedVarInt(ByteArrayOutputStream out, long value) {
+        while ((value & ~0x7FL) != 0) {
+            out.write((int) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        out.write((int) value);
+    }
+
+    /**
+     * Just enough of the Thrift compact protocol to write the Parquet file metadata and page headers. {@link #toByteArray()} ends the outermost struct.
+     */
+    private static class ThriftCompactWriter {
+        private static final int BOOLEAN_TRUE = 1;
+        private static final int BOOLEAN_FALSE = 2;
+        private static final int I32 = 5;
+        private static final int I64 = 6;
+        private static final int BINARY = 8;
+        private static final int LIST = 9;
+        private static final int STRUCT = 12;
+
+        private final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        private final Deque<Integer> lastFieldIds = new ArrayDeque<>();
+        private int lastFieldId;
+
+        private void fieldHeader(int fieldId, int type) {
+            int delta = fieldId - lastFieldId;
+            if (delta > 0 && delta <= 15) {
+                out.write(delta << 4 | type);
+            }
+            else {
+                out.write(type);
+                writeUnsignedVarInt(out, zigZag(fieldId));
+            }
+            lastFieldId = fieldId;
+        }
+
+        private void i32(int fieldId, int value) {
+            fieldHeader(fieldId, I32);
+            i32Element(value);
+        }
+
+        private void i64(int fieldId, long value) {
+            fieldHeader(fieldId, I64);
+            writeUnsignedVarInt(out, zigZag(value));
+        }
+
+        private void bool(int fieldId, boolean value) {
+            fieldHeader(fieldId, value ? BOOLEAN_TRUE : BOOLEAN_FALSE);
+        }
+
+        private void binary(int fieldId, byte[] value) {
+            fieldHeader(fieldId, BINARY);
+            binaryElement(value);
+        }
+
+        private void string(int fieldId, String value) {
+            binary(fieldId, value.getBytes(StandardCharsets.UTF_8));
+        }
+
+        private void beginList(int fieldId, int elementType, int size) {
+            fieldHeader(fieldId, LIST);
+            if (size < 15) {
+                out.write(size << 4 | elementType);
+            }
+            else {
+                out.write(0xF0 | elementType);
+                writeUnsignedVarInt(out, size);
+            }
+        }
+
+        private void i32Element(int value) {
+            writeUnsignedVarInt(out, zigZag(value));
+        }
+
+        private void binaryElement(byte[] value) {
+            writeUnsignedVarInt(out, value.length);
+            out.writeBytes(value);
+        }
+
+        private void stringElement(String value) {
+            binaryElement(value.getBytes(StandardCharsets.UTF_8));
+        }
+
+        private void beginStruct(int fieldId) {
+            fieldHeader(fieldId, STRUCT);
+            beginStruct();
+        }
+
+        /**
+         * Begins a struct that is an element of a list.
+         */
+        private void beginStruct() {
+            lastFieldIds.push(lastFieldId);
+            lastFieldId = 0;
+        }
+
+        private void endStruct() {
+            out.write(0);
+            lastFieldId = lastFieldIds.pop();
+        }
+
+        private byte[] toByteArray() {
+            out.write(0);
+            return out.toByteArray();
+        }
+
+        private static long zigZag(long value) {
+            return (value << 1) ^ (value >> 63);
+        }
+
+        private static long zigZag(int value) {
+            return ((long) value << 1) ^ (value >> 31);
+        }
+    }
+}
@@ -0,0 +1,189 @@
+/*
+ * Copyright (C) 2026 DANS - Data Archiving and Networked Services (info@dans.knaw.nl)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.knaw.dans.dvcli.command;
+
+import lombok.Value;
+
+import java.sql.ResultSet;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Converts between PID strings (e.g. <code>doi:10.5072/FK2/ABCDEF</code>) and the <code>protocol</code>, <code>authority</code> and <code>identifier</code> columns of
+ * the <code>dvobject</code> table. Queries should bind these as separate parameters instead of comparing against the concatenated string, so that PostgreSQL can
+ * use the index on those columns.
+ */
+public class PidCodec {
+
+    @Value
+    public static class Pid {
+        String protocol;
+        String authority;
+        String identifier;
+
+        @Override
+        public String toString() {
+            return format(protocol, authority, identifier);
+        }
+    }
+
+    private PidCodec() {
+    }
+
+    /**
+     * Splits a PID into its protocol, authority and identifier. The protocol is everything before the first colon, the authority everything between the colon and
+     * the first slash after it, and the identifier is the rest (which may contain further slashes, e.g. a shoulder).
+     *
+     * @param pid the PID
+     * @return the parsed PID
+     * @throws IllegalArgumentException if the PID does not have the form <code>protocol:authority/identifier</code>
+     */
+    public static Pid parse(String pid) {
+        if (pid == null) {
+            throw new IllegalArgumentException("PID must not be null");
+        }
+        int colon = pid.indexOf(':');
+        int slash = colon < 0 ? -1 : pid.indexOf('/', colon + 1);
+        if (colon <= 0 || slash <= colon + 1 || slash == pid.length() - 1) {
+            throw new IllegalArgumentException("Not a valid PID (expected protocol:authority/identifier): " + pid);
+        }
+        return new Pid(pid.substring(0, colon), pid.substring(colon + 1, slash), pid.substring(slash + 1));
+    }
+
+    public static String format(String protocol, String authority, String identifier) {
+        return protocol + ":" + authority + "/" + identifier;
+    }
+
+    /**
+     * Returns a predicate that matches a PID on the dvobject with the given table alias. Bind the values returned by {@link #parameters(Pid)} to its placeholders.
+     *
+     * @param alias the alias of the dvobject table in the query
+     * @return the predicate
+     */
+    public static String predicate(String alias) {
+        return alias + ".protocol = ? AND " + alias + ".authority = ? AND " + alias + ".identifier = ?";
+    }
+
+    public static Object[] parameters(Pid pid) {
+        return new Object[] { pid.getProtocol(), pid.getAuthority(), pid.getIdentifier() };
+    }
+
+    /**
+     * Resolves PIDs to dataset ids in a single query. The PID components are bound as three parallel arrays that are joined to the dvobject table, so that
+     * PostgreSQL looks up each requested PID in the index and only the requested PIDs are returned. PIDs that are malformed or do not belong to a dataset are
+     * absent from the result.
+     *
+     * @param dbApi the database API
+     * @param pids  the PIDs to resolve
+     * @return a map from PID to dvobject id
+     * @throws Exception if the query fails
+     */
+    public static Map<String, Long> resolveDatasetIds(PooledDatabase dbApi, Collection<String> pids) throws Exception {
+        Set<Pid> wanted = new LinkedHashSet<>();
+        for (String pid : pids) {
+            try {
+                wanted.add(parse(pid));
+            }
+            catch (IllegalArgumentException e) {
+                // Malformed PIDs cannot match a dataset
+            }
+        }
+        Map<String, Long> result = new HashMap<>();
+        if (wanted.isEmpty()) {
+            return result;
+        }
+
+        String query = """
+            SELECT dvo.id, protocol, authority, identifier
+            FROM dvobject dvo
+            JOIN unnest(?::text[], ?::text[], ?::text[]) AS p(protocol, authority, identifier) USING (protocol, authority, identifier)
+            WHERE dvo.dtype = 'Dataset'
+            """;
+
+        Object[] parameters = new Object[] {
+            wanted.stream().map(Pid::getProtocol).toArray(String[]::new),
+            wanted.stream().map(Pid::getAuthority).toArray(String[]::new),
+            wanted.stream().map(Pid::getIdentifier).toArray(String[]::new)
+        };
+
+        try (var context = dbApi.query(query, (ResultSet rs) -> {
+            try {
+                return Map.entry(format(rs.getString("protocol"), rs.getString("authority"), rs.getString("identifier")), rs.getLong("id"));
+            }
+            catch (Exception e) {
+                throw new RuntimeException("Failed to map ResultSet row to PID and id", e);
+            }
+        })) {
+            for (var row : context.executeFor(Collections.singletonList(parameters))) {
+                result.put(row.getKey(), row.getValue());
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Resolves dataset references as accepted by the bulk dataset commands: a number is taken to be the database id of the dataset, anything else a PID. PIDs
+     * are resolved with {@link #resolveDatasetIds(PooledDatabase, Collection)} and ids are checked for existence, so that each takes one query in total.
+     * References that do not match a dataset are absent from the result.
+     *
+     * @param dbApi      the database API
+     * @param references the database ids and PIDs
+     * @return a map from reference to dvobject id
+     * @throws Exception if a query fails
+     */
+    public static Map<String, Long> resolveDatasets(PooledDatabase dbApi, Collection<String> references) throws Exception {
+        Map<Long, String> referencesById = new HashMap<>();
+        List<String> pids = new ArrayList<>();
+        for (String reference : references) {
+            try {
+                referencesById.put(Long.parseLong(reference), reference);
+            }
+            catch (NumberFormatException e) {
+                pids.add(reference);
+            }
+        }
+        Map<String, Long> result = resolveDatasetIds(dbApi, pids);
+        if (referencesById.isEmpty()) {
+            return result;
+        }
+
+        String query = """
+            SELECT ds.id
+            FROM dataset ds
+            WHERE ds.id = ANY (?)
+            """;
+
+        try (var context = dbApi.query(query, (ResultSet rs) -> {
+            try {
+                return rs.getLong("id");
+            }
+            catch (Exception e) {
+                throw new RuntimeException("Failed to map ResultSet row to dataset id", e);
+            }
+        })) {
+            for (Long id : context.executeFor(Collections.singletonList(new Object[] { referencesById.keySet().toArray(new Long[0]) }))) {
+                result.put(referencesById.get(id), id);
+            }
+        }
+        return result;
+    }
+}
@@ -0,0 +1,272 @@
+/*
+ * Copyright (C) 2026 DANS - Data Archiving and Networked Services (info@dans.knaw.nl)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.knaw.dans.dvcli.command;
+
+import lombok.extern.slf4j.Slf4j;
+import nl.knaw.dans.dvcli.config.DatabasePoolConfig;
+
+import java.io.IOException;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+
+/**
+ * Access to the Dataverse database through a small pool of connections that is shared by all commands in the process. It has the same shape as the DatabaseApi
+ * of the Dataverse client: {@link #query(String, Function)} prepares a query and {@link Query#executeFor(List)} executes it for one or more parameter sets. Unlike
+ * the DatabaseApi, it does not open a new connection for every query, so commands that run many queries, and commands run from the shell, batch or daemon, only
+ * pay for connection setup and authentication once per connection. A connection is borrowed only for the duration of a single executeFor call.
+ * <p>
+ * Report commands that read large results use {@link Query#stream(Object[], RowConsumer)} instead, which hands each row to a consumer as it is read and keeps
+ * only one fetch of rows in memory.
+ */
+@Slf4j
+public class PooledDatabase implements AutoCloseable {
+    private static final int VALIDATION_TIMEOUT_SECONDS = 5;
+
+    private final String url;
+    private final Properties properties = new Properties();
+    private final long connectionTimeoutMillis;
+    private final int fetchSize;
+    private final Semaphore permits;
+    private int maxConnections;
+    private final Deque<Connection> idle = new ArrayDeque<>();
+    private boolean closed;
+
+    public PooledDatabase(String url, String user, String password, DatabasePoolConfig config) {
+        this.url = url;
+        if (user != null) {
+            properties.setProperty("user", user);
+        }
+        if (password != null) {
+            properties.setProperty("password", password);
+        }
+        properties.setProperty("prepareThreshold", String.valueOf(config.getPrepareThreshold()));
+        properties.setProperty("preparedStatementCacheQueries", String.valueOf(config.getPreparedStatementCacheQueries()));
+        this.connectionTimeoutMillis = config.getConnectionTimeout().toMilliseconds();
+        this.fetchSize = config.getFetchSize();
+        this.maxConnections = config.getMaxConnections();
+        this.permits = new Semaphore(maxConnections, true);
+    }
+
+    /**
+     * Grows the pool so that it allows at least the given number of connections at the same time. Commands that run queries in parallel call this with their
+     * parallelism, so that the parallel queries do not wait for each other's connections.
+     *
+     * @param connections the number of connections that must be available at the same time
+     */
+    public synchronized void ensureCapacity(int connections) {
+        if (connections > maxConnections) {
+            log.debug("Growing database connection pool from {} to {} connections", maxConnections, connections);
+            permits.release(connections - maxConnections);
+            maxConnections = connections;
+        }
+    }
+
+    /**
+     * Receives the rows of a streaming query one at a time.
+     *
+     * @param <T> the type of the mapped rows
+     */
+    @FunctionalInterface
+    public interface RowConsumer<T> {
+        void accept(T row) throws IOException;
+    }
+
+    public <T> Query<T> query(String sql, Function<ResultSet, T> mapper) {
+        return new Query<>(sql, mapper);
+    }
+
+    @Override
+    public synchronized void close() {
+        closed = true;
+        for (Connection connection : idle) {
+            closeQuietly(connection);
+        }
+        idle.clear();
+    }
+
+    public class Query<T> implements AutoCloseable {
+        private final String sql;
+        private final Function<ResultSet, T> mapper;
+
+        private Query(String sql, Function<ResultSet, T> mapper) {
+            this.sql = sql;
+            this.mapper = mapper;
+        }
+
+        /**
+         * Executes the query once for each parameter set and returns the mapped rows of all executions.
+         *
+         * @param parameterSets the parameter sets
+         * @return the mapped rows
+         * @throws SQLException if no connection is available or the query fails
+         */
+        public List<T> executeFor(List<Object[]> parameterSets) throws SQLException {
+            Connection connection = borrow();
+            boolean broken = true;
+            try (var statement = connection.prepareStatement(sql)) {
+                List<T> results = new ArrayList<>();
+                for (Object[] parameters : parameterSets) {
+                    for (int i = 0; i < parameters.length; i++) {
+                        statement.setObject(i + 1, parameters[i]);
+                    }
+                    try (var rs = statement.executeQuery()) {
+                        while (rs.next()) {
+                            results.add(mapper.apply(rs));
+                        }
+                    }
+                }
+                broken = false;
+                return results;
+            }
+            finally {
+                release(connection, broken);
+            }
+        }
+
+        /**
+         * Executes the query with the given parameters and hands each mapped row to the consumer as soon as it is read. The query runs in a read-only transaction
+         * with a fetch size, because the PostgreSQL JDBC driver only uses a cursor, instead of reading the whole result set into memory, when autocommit is off.
+         * <p>
+         * If the query or the consumer fails, the transaction is rolled back before the connection goes back to the pool. If that fails as well, for example
+         * because the connection was lost, the connection is closed and the rollback error is added to the original error as a suppressed exception.
+         *
+         * @param parameters the parameters
+         * @param consumer   the consumer of the rows
+         * @return the number of rows
+         * @throws SQLException if no connection is available or the query fails
+         * @throws IOException  if the consumer fails
+         */
+        public long stream(Object[] parameters, RowConsumer<T> consumer) throws SQLException, IOException {
+            Connection connection = borrow();
+            boolean broken = true;
+            try {
+                connection.setReadOnly(true);
+                connection.setAutoCommit(false);
+                long count = 0;
+                try (var statement = connection.prepareStatement(sql, ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY)) {
+                    statement.setFetchSize(fetchSize);
+                    for (int i = 0; i < parameters.length; i++) {
+                        statement.setObject(i + 1, parameters[i]);
+                    }
+                    try (var rs = statement.executeQuery()) {
+                        while (rs.next()) {
+                            consumer.accept(mapper.apply(rs));
+                            count++;
+                        }
+                    }
+                }
+                catch (SQLException | IOException | RuntimeException e) {
+                    try {
+                        endTransaction(connection);
+                        broken = false;
+                    }
+                    catch (SQLException rollbackError) {
+                        e.addSuppressed(rollbackError);
+                    }
+                    throw e;
+                }
+                endTransaction(connection);
+                broken = false;
+                return count;
+            }
+            finally {
+                release(connection, broken);
+            }
+        }
+
+        @Override
+        public void close() {
+            // The connection is already returned to the pool by executeFor and stream
+        }
+    }
+
+    private Connection borrow() throws SQLException {
+        try {
+            if (!permits.tryAcquire(connectionTimeoutMillis, TimeUnit.MILLISECONDS)) {
+                throw new SQLException("Timed out waiting for a database connection");
+            }
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new SQLException("Interrupted while waiting for a database connection", e);
+        }
+        try {
+            Connection connection;
+            while ((connection = pollIdle()) != null) {
+                if (connection.isValid(VALIDATION_TIMEOUT_SECONDS)) {
+                    return connection;
+                }
+                log.debug("Discarding invalid database connection");
+                closeQuietly(connection);
+            }
+            log.debug("Opening database connection to {}", url);
+            return DriverManager.getConnection(url, properties);
+        }
+        catch (SQLException | RuntimeException e) {
+            permits.release();
+            throw e;
+        }
+    }
+
+    private static void endTransaction(Connection connection) throws SQLException {
+        connection.rollback();
+        connection.setAutoCommit(true);
+        connection.setReadOnly(false);
+    }
+
+    private void release(Connection connection, boolean broken) {
+        try {
+            if (broken || !returnIdle(connection)) {
+                closeQuietly(connection);
+            }
+        }
+        finally {
+            permits.release();
+        }
+    }
+
+    private synchronized Connection pollIdle() {
+        return idle.pollFirst();
+    }
+
+    private synchronized boolean returnIdle(Connection connection) {
+        if (closed) {
+            return false;
+        }
+        // Most recently used first, so that connections that are not needed anymore are the ones that time out on the server
+        idle.addFirst(connection);
+        return true;
+    }
+
+    private static void closeQuietly(Connection connection) {
+        try {
+            connection.close();
+        }
+        catch (SQLException e) {
+            log.debug("Failed to close database connection", e);
+        }
+    }
+}
@@ -0,0 +1,51 @@
+/*
+ * Copyright (C) 2026 DANS - Data Archiving and Networked Services (info@dans.knaw.nl)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.knaw.dans.dvcli.command;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Spaces out calls evenly so that, across all threads, no more than the given number of calls per second are started. A rate of zero or less means no limit.
+ */
+public class RateLimiter {
+    private final long intervalNanos;
+    private long next = System.nanoTime();
+
+    public RateLimiter(double callsPerSecond) {
+        this.intervalNanos = callsPerSecond > 0 ? (long) (TimeUnit.SECONDS.toNanos(1) / callsPerSecond) : 0;
+    }
+
+    /**
+     * Blocks until the next call may be started.
+     *
+     * @throws InterruptedException if the thread is interrupted while waiting
+     */
+    public void acquire() throws InterruptedException {
+        if (intervalNanos == 0) {
+            return;
+        }
+        long wait;
+        synchronized (this) {
+            long now = System.nanoTime();
+            if (next < now) {
+                next = now;
+            }
+            wait = next - now;
+            next += intervalNanos;
+        }
+        TimeUnit.NANOSECONDS.sleep(wait);
+    }
+}
@@ -0,0 +1,135 @@
+/*
+ * Copyright (C) 2026 DANS - Data Archiving and Networked Services (info@dans.knaw.nl)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.knaw.dans.dvcli.command;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import picocli.CommandLine;
+
+import java.io.FileDescriptor;
+import java.io.FileOutputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Supplier;
+
+/**
+ * Executes dv command lines, such as the lines of a batch script, in the running JVM. Each line is executed on a new command line object, with new command
+ * instances, so that no option values or other state carry over from one line to the next. The command lines share the Dataverse client, and with it its HTTP
+ * connections.
+ */
+@Slf4j
+@RequiredArgsConstructor
+public class ScriptRunner {
+    private final Supplier<CommandLine> commandLineFactory;
+
+    /**
+     * Executes one line. Empty lines and lines starting with # are ignored.
+     *
+     * @param line the line, without the leading "dv"
+     * @return the exit code of the command, 0 for an ignored line, or 2 if the line cannot be parsed
+     */
+    public int execute(String line) {
+        List<String> args;
+        try {
+            args = tokenize(line);
+        }
+        catch (IllegalArgumentException e) {
+            System.err.println(e.getMessage());
+            return 2;
+        }
+        if (args.isEmpty()) {
+            return 0;
+        }
+        log.debug("Executing {}", args);
+        return commandLineFactory.get().execute(args.toArray(new String[0]));
+    }
+
+    /**
+     * Several commands close System.out or System.err when they are done writing to them, and commands that read from stdin close System.in. That is harmless
+     * when the JVM exits after the command, but not when more commands follow. This replaces the output streams with streams whose close method only flushes, and
+     * System.in with a stream whose close method does nothing.
+     */
+    public static void protectStandardStreams() {
+        System.setOut(new NonClosingPrintStream(new FileOutputStream(FileDescriptor.out)));
+        System.setErr(new NonClosingPrintStream(new FileOutputStream(FileDescriptor.err)));
+        if (!(System.in instanceof NonClosingInputStream)) {
+            System.setIn(new NonClosingInputStream(System.in));
+        }
+    }
+
+    /**
+     * Splits a line into arguments the way a POSIX shell would, for the common cases: arguments are separated by whitespace; single quotes preserve everything
+     * between them; double quotes preserve everything except backslash escapes of " and \; outside quotes, a backslash escapes the next character; and an unquoted
+     * # at the start of an argument starts a comment.
+     *
+     * @param line the line
+     * @return the arguments
+     * @throws IllegalArgumentException if a quote is not closed
+     */
+    static List<String> tokenize(String line) {
+        List<String> args = new ArrayList<>();
+        StringBuilder current = new StringBuilder();
+        boolean inArg = false;
+        for (int i = 0; i < line.length(); i++) {
+            char c = line.charAt(i);
+            if (Character.isWhitespace(c)) {
+                if (inArg) {
+                    args.add(current.toString());
+                    current.setLength(0);
+                    inArg = false;
+                }
+            }
+            else if (c == '#' && !inArg) {
+                break;
+            }
+            else if (c == '\'') {
+                int end = line.indexOf('\'', i + 1);
+                if (end < 0) {
+                    throw new IllegalArgumentException("Unterminated single quote in: " + line);
+                }
+                current.append(line, i + 1, end);
+                i = end;
+                inArg = true;
+            }
+            else if (c == '"') {
+                i++;
+                while (i < line.length() && line.charAt(i) != '"') {
+                    if (line.charAt(i) == '\\' && i + 1 < line.length() && (line.charAt(i + 1) == '"' || line.charAt(i + 1) == '\\')) {
+                        i++;
+                    }
+                    current.append(line.charAt(i));
+                    i++;
+                }
+                if (i == line.length()) {
+                    throw new IllegalArgumentException("Unterminated double quote in: " + line);
+                }
+                inArg = true;
+            }
+            else if (c == '\\' && i + 1 < line.length()) {
+                current.append(line.charAt(++i));
+                inArg = true;
+            }
+            else {
+                current.append(c);
+                inArg = true;
+            }
+        }
+        if (inArg) {
+            args.add(current.toString());
+        }
+        return args;
+    }
+}
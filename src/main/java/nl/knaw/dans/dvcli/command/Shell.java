@@ -0,0 +1,58 @@
+/*
+ * Copyright (C) 2026 DANS - Data Archiving and Networked Services (info@dans.knaw.nl)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.knaw.dans.dvcli.command;
+
+import lombok.RequiredArgsConstructor;
+import picocli.CommandLine;
+import picocli.CommandLine.Command;
+
+import java.io.BufferedReader;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.Callable;
+import java.util.function.Supplier;
+
+@Command(
+    name = "shell",
+    description = "Read dv commands from stdin and execute them in this process, so that startup and the Dataverse client are shared. "
+        + "Enter the commands without the leading 'dv'; 'exit' or end of input ends the shell",
+    mixinStandardHelpOptions = true
+)
+@RequiredArgsConstructor
+public class Shell implements Callable<Integer> {
+    private final Supplier<CommandLine> commandLineFactory;
+
+    @Override
+    public Integer call() throws Exception {
+        ScriptRunner.protectStandardStreams();
+        var runner = new ScriptRunner(commandLineFactory);
+        boolean interactive = System.console() != null;
+        var reader = new BufferedReader(new InputStreamReader(System.in, StandardCharsets.UTF_8));
+        int exitCode = 0;
+        while (true) {
+            if (interactive) {
+                System.err.print("dv> ");
+                System.err.flush();
+            }
+            String line = reader.readLine();
+            if (line == null || line.trim().equals("exit") || line.trim().equals("quit")) {
+                break;
+            }
+            exitCode = runner.execute(line);
+        }
+        return exitCode;
+    }
+}
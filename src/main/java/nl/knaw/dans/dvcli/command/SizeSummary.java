@@ -0,0 +1,184 @@
+/*
+ * Copyright (C) 2026 DANS - Data Archiving and Networked Services (info@dans.knaw.nl)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.knaw.dans.dvcli.command;
+
+import lombok.Data;
+
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+
+/**
+ * Summarizes a stream of sizes in constant memory: count, total, minimum and maximum, approximate quantiles, a histogram with power-of-two buckets and the N
+ * largest items. The quantiles are estimated from logarithmic buckets with a relative error of at most 1%. Summaries can be merged, for example when the sizes are
+ * read in parallel partitions.
+ */
+public class SizeSummary {
+    private static final double RELATIVE_ACCURACY = 0.01;
+    private static final double GAMMA = (1 + RELATIVE_ACCURACY) / (1 - RELATIVE_ACCURACY);
+    private static final double LOG_GAMMA = Math.log(GAMMA);
+    private static final int NUM_BUCKETS = (int) Math.ceil(Math.log(Long.MAX_VALUE) / LOG_GAMMA) + 1;
+    private static final String[] UNITS = { "B", "KiB", "MiB", "GiB", "TiB", "PiB", "EiB" };
+
+    @Data
+    public static class Item {
+        private final String label;
+        private final long size;
+    }
+
+    private final int topN;
+    private final long[] buckets = new long[NUM_BUCKETS];
+    private final long[] powerOfTwoBuckets = new long[Long.SIZE];
+    private final PriorityQueue<Item> largest = new PriorityQueue<>(Comparator.comparingLong(Item::getSize));
+    private long zeroCount;
+    private long count;
+    private long total;
+    private long min = Long.MAX_VALUE;
+    private long max = Long.MIN_VALUE;
+
+    public SizeSummary(int topN) {
+        this.topN = topN;
+    }
+
+    public void add(String label, long size) {
+        if (size < 0) {
+            throw new IllegalArgumentException("Size must not be negative: " + size);
+        }
+        count++;
+        total += size;
+        min = Math.min(min, size);
+        max = Math.max(max, size);
+        if (size == 0) {
+            zeroCount++;
+        }
+        else {
+            buckets[(int) Math.ceil(Math.log(size) / LOG_GAMMA)]++;
+        }
+        powerOfTwoBuckets[Long.SIZE - Long.numberOfLeadingZeros(size)]++;
+        offerLargest(new Item(label, size));
+    }
+
+    public void merge(SizeSummary other) {
+        count += other.count;
+        total += other.total;
+        min = Math.min(min, other.min);
+        max = Math.max(max, other.max);
+        zeroCount += other.zeroCount;
+        for (int i = 0; i < buckets.length; i++) {
+            buckets[i] += other.buckets[i];
+        }
+        for (int i = 0; i < powerOfTwoBuckets.length; i++) {
+            powerOfTwoBuckets[i] += other.powerOfTwoBuckets[i];
+        }
+        for (Item item : other.largest) {
+            offerLargest(item);
+        }
+    }
+
+    public long getCount() {
+        return count;
+    }
+
+    public long getTotal() {
+        return total;
+    }
+
+    /**
+     * Returns the approximate value at the given quantile.
+     *
+     * @param quantile the quantile, between 0 and 1
+     * @return the approximate value, or 0 if no sizes were added
+     */
+    public long getQuantile(double quantile) {
+        if (count == 0) {
+            return 0;
+        }
+        long rank = (long) Math.floor(quantile * (count - 1));
+        long seen = zeroCount;
+        if (rank < seen) {
+            return 0;
+        }
+        for (int i = 0; i < buckets.length; i++) {
+            seen += buckets[i];
+            if (rank < seen) {
+                // Midpoint of the bucket (gamma^(i-1), gamma^i], clamped to the observed range.
+                long estimate = Math.round(2 * Math.pow(GAMMA, i) / (GAMMA + 1));
+                return Math.max(min, Math.min(max, estimate));
+            }
+        }
+        return max;
+    }
+
+    public List<Item> getLargest() {
+        List<Item> result = new ArrayList<>(largest);
+        result.sort(Comparator.comparingLong(Item::getSize).reversed());
+        return result;
+    }
+
+    public void print(PrintWriter out, String itemName) {
+        out.printf("%-10s %d%n", itemName + ":", count);
+        if (count == 0) {
+            out.flush();
+            return;
+        }
+        out.printf("%-10s %s (%d bytes)%n", "total:", formatSize(total), total);
+        out.printf("%-10s %s%n", "min:", formatSize(min));
+        out.printf("%-10s %s%n", "mean:", formatSize(total / count));
+        out.printf("%-10s %s%n", "p50:", formatSize(getQuantile(0.5)));
+        out.printf("%-10s %s%n", "p90:", formatSize(getQuantile(0.9)));
+        out.printf("%-10s %s%n", "p99:", formatSize(getQuantile(0.99)));
+        out.printf("%-10s %s%n", "max:", formatSize(max));
+        out.println();
+        out.println("Histogram:");
+        for (int i = 0; i < powerOfTwoBuckets.length; i++) {
+            if (powerOfTwoBuckets[i] > 0) {
+                String range = i == 0 ? "0" : "[" + formatSize(1L << (i - 1)) + ", " + (i == Long.SIZE - 1 ? "..." : formatSize(1L << i)) + ")";
+                out.printf("  %-24s %12d%n", range, powerOfTwoBuckets[i]);
+            }
+        }
+        if (topN > 0) {
+            out.println();
+            out.printf("Largest %d:%n", topN);
+            for (Item item : getLargest()) {
+                out.printf("  %12s  %s%n", formatSize(item.getSize()), item.getLabel());
+            }
+        }
+        out.flush();
+    }
+
+    static String formatSize(long bytes) {
+        if (bytes < 1024) {
+            return bytes + " B";
+        }
+        int unit = (Long.SIZE - 1 - Long.numberOfLeadingZeros(bytes)) / 10;
+        return String.format("%.1f %s", bytes / Math.pow(1024, unit), UNITS[unit]);
+    }
+
+    private void offerLargest(Item item) {
+        if (topN <= 0) {
+            return;
+        }
+        if (largest.size() < topN) {
+            largest.add(item);
+        }
+        else if (item.getSize() > largest.peek().getSize()) {
+            largest.poll();
+            largest.add(item);
+        }
+    }
+}
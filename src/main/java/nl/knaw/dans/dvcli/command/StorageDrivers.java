@@ -0,0 +1,50 @@
+/*
+ * Copyright (C) 2026 DANS - Data Archiving and Networked Services (info@dans.knaw.nl)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.knaw.dans.dvcli.command;
+
+import lombok.extern.slf4j.Slf4j;
+import nl.knaw.dans.lib.dataverse.DataverseClient;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Looks up the storage drivers as configured in Dataverse. The database stores the id of a storage driver, while the API and the users use its label.
+ */
+@Slf4j
+class StorageDrivers {
+
+    private StorageDrivers() {
+    }
+
+    /**
+     * Returns the labels of the configured storage drivers by id, retrieved with one API call. If the call fails, an empty map is returned, so that callers fall
+     * back to reporting ids.
+     *
+     * @param dataverseClient the Dataverse client
+     * @return the labels by driver id
+     */
+    static Map<String, String> fetchLabelsById(DataverseClient dataverseClient) {
+        Map<String, String> labelsById = new HashMap<>();
+        try {
+            dataverseClient.admin().getAvailableStorageDrivers().getData().forEach((label, id) -> labelsById.put(id, label));
+        }
+        catch (Exception e) {
+            log.warn("Could not retrieve storage driver labels; reporting driver ids instead: {}", e.getMessage());
+        }
+        return labelsById;
+    }
+}
@@ -0,0 +1,270 @@
+/*
+ * Copyright (C) 2026 DANS - Data Archiving and Networked Services (info@dans.knaw.nl)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.knaw.dans.dvcli.command;
+
+import lombok.Data;
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.commons.csv.CSVFormat;
+import org.apache.commons.csv.CSVPrinter;
+
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.sql.ResultSet;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.function.LongFunction;
+
+/**
+ * Storage size and file count per dataset, per storage driver and per collection, computed from a single query over the dataset versions and their files. The
+ * query aggregates per dataset and storage driver, and its rows are streamed: the totals of each dataset are handed on as soon as its rows are read, and are
+ * rolled up into the per-collection totals using a map from each collection to its parent that is read once. Only that map and the totals per storage driver
+ * and per collection are kept in memory.
+ */
+@Slf4j
+public class StorageSizeBreakdown {
+    private static final int MAX_COLLECTION_DEPTH = 1000;
+    // Must match the driver of files without a driver prefix in fetchDatasetDriverUsage
+    private static final String DEFAULT_DRIVER = "(default)";
+
+    @Data
+    private static class DatasetDriverUsage {
+        private final long datasetId;
+        private final Long ownerId;
+        private final String pid;
+        private final String driver;
+        private final long storage;
+        private final long files;
+    }
+
+    @Data
+    private static class CollectionNode {
+        private final long id;
+        private final Long ownerId;
+        private final String alias;
+    }
+
+    @Getter
+    public static class Totals {
+        private long storage;
+        private long files;
+        private long datasets;
+
+        void add(long storage, long files, long datasets) {
+            this.storage += storage;
+            this.files += files;
+            this.datasets += datasets;
+        }
+    }
+
+    @Getter
+    public static class DatasetTotals extends Totals {
+        private final long datasetId;
+        private final String pid;
+        private final Long ownerId;
+
+        private DatasetTotals(long datasetId, String pid, Long ownerId) {
+            this.datasetId = datasetId;
+            this.pid = pid;
+            this.ownerId = ownerId;
+        }
+    }
+
+    private final Map<String, Totals> drivers = new TreeMap<>();
+    private final Map<Long, Totals> collections = new HashMap<>();
+    private final Map<Long, CollectionNode> collectionTree = new HashMap<>();
+    private DatasetTotals currentDataset;
+    private long numDatasets;
+
+    /**
+     * Computes the breakdown. The totals of each dataset are handed to the consumer in the order of the PIDs, and are not kept.
+     *
+     * @param dbApi           the database API
+     * @param datasetConsumer the consumer of the totals per dataset
+     * @return the totals per storage driver and per collection
+     * @throws Exception if a query or the consumer fails
+     */
+    public static StorageSizeBreakdown fetch(PooledDatabase dbApi, PooledDatabase.RowConsumer<DatasetTotals> datasetConsumer) throws Exception {
+        var breakdown = new StorageSizeBreakdown();
+        streamCollections(dbApi, collection -> breakdown.collectionTree.put(collection.getId(), collection));
+        streamDatasetDriverUsage(dbApi, usage -> breakdown.add(usage, datasetConsumer));
+        breakdown.endDataset(datasetConsumer);
+        log.info("Storage size breakdown: {} datasets, {} storage drivers, {} collections", breakdown.numDatasets, breakdown.drivers.size(), breakdown.collections.size());
+        return breakdown;
+    }
+
+    /**
+     * Writes the totals per storage driver, by the label of the driver as configured in Dataverse. Files whose storage identifier has no driver prefix are stored
+     * by the default driver of the instance, and are counted under that driver.
+     *
+     * @param out              the output
+     * @param storageFormatter formats the storage size
+     * @param labelsById       the labels of the storage drivers by id; drivers without a label are reported by id
+     * @param defaultDriverId  the id of the default storage driver, or null if it is not known
+     * @throws IOException if writing fails
+     */
+    public void writeDriverReport(PrintWriter out, LongFunction<Object> storageFormatter, Map<String, String> labelsById, String defaultDriverId) throws IOException {
+        Map<String, Totals> totalsById = new TreeMap<>();
+        for (var entry : drivers.entrySet()) {
+            String id = DEFAULT_DRIVER.equals(entry.getKey()) && defaultDriverId != null ? defaultDriverId : entry.getKey();
+            Totals totals = entry.getValue();
+            totalsById.computeIfAbsent(id, d -> new Totals()).add(totals.getStorage(), totals.getFiles(), totals.getDatasets());
+        }
+        try (var printer = new CSVPrinter(out, CSVFormat.DEFAULT.builder()
+            .setHeader("DRIVER", "DRIVER_ID", "STORAGE", "FILES", "DATASETS")
+            .get())) {
+            for (var entry : totalsById.entrySet()) {
+                Totals totals = entry.getValue();
+                printer.printRecord(labelsById.getOrDefault(entry.getKey(), entry.getKey()), entry.getKey(), storageFormatter.apply(totals.getStorage()),
+                    totals.getFiles(), totals.getDatasets());
+            }
+        }
+    }
+
+    /**
+     * Writes the totals per collection. The totals of a collection include the datasets in all its subcollections.
+     *
+     * @param out              the output
+     * @param storageFormatter formats the storage size
+     * @throws IOException if writing fails
+     */
+    public void writeCollectionReport(PrintWriter out, LongFunction<Object> storageFormatter) throws IOException {
+        Map<String, Long> idsByAlias = new TreeMap<>();
+        for (Long id : collections.keySet()) {
+            idsByAlias.put(collectionTree.get(id).getAlias(), id);
+        }
+        try (var printer = new CSVPrinter(out, CSVFormat.DEFAULT.builder()
+            .setHeader("ALIAS", "PARENT_ALIAS", "STORAGE", "FILES", "DATASETS")
+            .get())) {
+            for (Long id : idsByAlias.values()) {
+                CollectionNode collection = collectionTree.get(id);
+                CollectionNode parent = collection.getOwnerId() != null ? collectionTree.get(collection.getOwnerId()) : null;
+                Totals totals = collections.get(id);
+                printer.printRecord(collection.getAlias(), parent != null ? parent.getAlias() : "", storageFormatter.apply(totals.getStorage()), totals.getFiles(),
+                    totals.getDatasets());
+            }
+        }
+    }
+
+    private void add(DatasetDriverUsage usage, PooledDatabase.RowConsumer<DatasetTotals> datasetConsumer) throws IOException {
+        // The rows of a dataset are consecutive, because the query orders them by PID
+        if (currentDataset != null && currentDataset.getDatasetId() != usage.getDatasetId()) {
+            endDataset(datasetConsumer);
+        }
+        if (currentDataset == null) {
+            currentDataset = new DatasetTotals(usage.getDatasetId(), usage.getPid(), usage.getOwnerId());
+        }
+        currentDataset.add(usage.getStorage(), usage.getFiles(), 0);
+        if (usage.getDriver() != null) {
+            drivers.computeIfAbsent(usage.getDriver(), d -> new Totals()).add(usage.getStorage(), usage.getFiles(), 1);
+        }
+    }
+
+    private void endDataset(PooledDatabase.RowConsumer<DatasetTotals> datasetConsumer) throws IOException {
+        if (currentDataset != null) {
+            rollUp(currentDataset);
+            numDatasets++;
+            datasetConsumer.accept(currentDataset);
+            currentDataset = null;
+        }
+    }
+
+    private void rollUp(DatasetTotals dataset) {
+        Long id = dataset.getOwnerId();
+        for (int depth = 0; id != null && depth < MAX_COLLECTION_DEPTH; depth++) {
+            CollectionNode collection = collectionTree.get(id);
+            if (collection == null) {
+                break;
+            }
+            collections.computeIfAbsent(id, c -> new Totals()).add(dataset.getStorage(), dataset.getFiles(), 1);
+            id = collection.getOwnerId();
+        }
+    }
+
+    private static void streamCollections(PooledDatabase dbApi, PooledDatabase.RowConsumer<CollectionNode> consumer) throws Exception {
+        String query = """
+            SELECT dvo.id, dvo.owner_id, dv.alias
+            FROM dataverse dv
+                     JOIN dvobject dvo ON dv.id = dvo.id;
+            """;
+
+        try (var context = dbApi.query(query, (ResultSet rs) -> {
+            try {
+                return new CollectionNode(rs.getLong("id"), rs.getObject("owner_id", Long.class), rs.getString("alias"));
+            }
+            catch (Exception e) {
+                throw new RuntimeException("Failed to map ResultSet row to CollectionNode", e);
+            }
+        })) {
+            context.stream(new Object[0], consumer);
+        }
+    }
+
+    private static void streamDatasetDriverUsage(PooledDatabase dbApi, PooledDatabase.RowConsumer<DatasetDriverUsage> consumer) throws Exception {
+        // As in DatasetsGetStorageSize, each datafile is counted only once across the versions of a dataset. The storage driver is the prefix of the storage
+        // identifier of the file; files stored before drivers were introduced have no prefix and are stored by the default driver.
+        String query = """
+            SELECT dataset_id,
+                   owner_id,
+                   protocol,
+                   authority,
+                   identifier,
+                   driver,
+                   SUM(filesize)      AS STORAGE,
+                   COUNT(datafile_id) AS FILES
+            FROM (
+                SELECT DISTINCT dvo.id       AS dataset_id,
+                                dvo.owner_id,
+                                dvo.protocol,
+                                dvo.authority,
+                                dvo.identifier,
+                                df.id        AS datafile_id,
+                                df.filesize,
+                                CASE
+                                    WHEN df.id IS NULL THEN NULL
+                                    WHEN position('://' IN fdvo.storageidentifier) > 0 THEN split_part(fdvo.storageidentifier, '://', 1)
+                                    ELSE '(default)'
+                                END          AS driver
+                FROM dataset ds
+                         JOIN dvobject dvo ON ds.id = dvo.id
+                         JOIN datasetversion dsv ON ds.id = dsv.dataset_id
+                         LEFT JOIN filemetadata fmd ON dsv.id = fmd.datasetversion_id
+                         LEFT JOIN datafile df ON fmd.datafile_id = df.id
+                         LEFT JOIN dvobject fdvo ON df.id = fdvo.id
+            ) AS unique_files
+            GROUP BY dataset_id, owner_id, protocol, authority, identifier, driver
+            ORDER BY protocol || ':' || authority || '/' || identifier, dataset_id;
+            """;
+
+        try (var context = dbApi.query(query, (ResultSet rs) -> {
+            try {
+                return new DatasetDriverUsage(
+                    rs.getLong("dataset_id"),
+                    rs.getObject("owner_id", Long.class),
+                    PidCodec.format(rs.getString("protocol"), rs.getString("authority"), rs.getString("identifier")),
+                    rs.getString("driver"),
+                    rs.getLong("STORAGE"),
+                    rs.getLong("FILES"));
+            }
+            catch (Exception e) {
+                throw new RuntimeException("Failed to map ResultSet row to DatasetDriverUsage", e);
+            }
+        })) {
+            context.stream(new Object[0], consumer);
+        }
+    }
+}
@@ -0,0 +1,214 @@
+/*
+ * Copyright (C) 2026 DANS - Data Archiving and Networked Services (info@dans.knaw.nl)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.knaw.dans.dvcli.command;
+
+import lombok.Data;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.commons.csv.CSVFormat;
+import org.apache.commons.csv.CSVParser;
+import org.apache.commons.csv.CSVPrinter;
+import org.apache.commons.csv.CSVRecord;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.sql.ResultSet;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Local, persistent cache of the storage size and file count per dataset. Computing these for all datasets requires joining every dataset version with its file
+ * metadata, which is expensive on large installations. The cache stores, per dataset, a fingerprint of its versions (the number of versions and the latest update
+ * time) and only recomputes the aggregates for datasets whose fingerprint changed since the previous run.
+ */
+@Slf4j
+public class StorageSizeCache {
+    private static final int REFRESH_BATCH_SIZE = 1000;
+
+    @Data
+    public static class Entry {
+        private final long id;
+        private final String pid;
+        private final String fingerprint;
+        private final long storage;
+        private final long files;
+    }
+
+    @Data
+    private static class DatasetState {
+        private final long id;
+        private final String pid;
+        private final String fingerprint;
+    }
+
+    @Data
+    private static class Aggregate {
+        private final long id;
+        private final long storage;
+        private final long files;
+    }
+
+    private final Path file;
+    private final Map<Long, Entry> entries;
+
+    private StorageSizeCache(Path file, Map<Long, Entry> entries) {
+        this.file = file;
+        this.entries = entries;
+    }
+
+    public static StorageSizeCache load(Path file) throws IOException {
+        Map<Long, Entry> entries = new HashMap<>();
+        if (Files.exists(file)) {
+            try (var parser = CSVParser.parse(file, StandardCharsets.UTF_8, CSVFormat.DEFAULT.builder().setHeader().setSkipHeaderRecord(true).get())) {
+                for (CSVRecord record : parser) {
+                    var entry = new Entry(
+                        Long.parseLong(record.get("ID")),
+                        record.get("PID"),
+                        record.get("FINGERPRINT"),
+                        Long.parseLong(record.get("STORAGE")),
+                        Long.parseLong(record.get("FILES")));
+                    entries.put(entry.getId(), entry);
+                }
+            }
+            log.info("Loaded {} datasets from storage size cache {}", entries.size(), file);
+        }
+        return new StorageSizeCache(file, entries);
+    }
+
+    public Collection<Entry> getEntries() {
+        return Collections.unmodifiableCollection(entries.values());
+    }
+
+    /**
+     * Brings the cache up to date with the database: datasets that no longer exist are removed, and the aggregates are recomputed for new datasets and for datasets
+     * whose versions changed.
+     *
+     * @param dbApi the database API
+     * @throws Exception if a query fails
+     */
+    public void refresh(PooledDatabase dbApi) throws Exception {
+        List<DatasetState> states = fetchDatasetStates(dbApi);
+        Map<Long, DatasetState> changed = new HashMap<>();
+        Map<Long, DatasetState> current = new HashMap<>();
+        for (DatasetState state : states) {
+            current.put(state.getId(), state);
+            Entry entry = entries.get(state.getId());
+            if (entry == null || !entry.getFingerprint().equals(state.getFingerprint()) || !entry.getPid().equals(state.getPid())) {
+                changed.put(state.getId(), state);
+            }
+        }
+        int removed = 0;
+        for (var it = entries.keySet().iterator(); it.hasNext(); ) {
+            if (!current.containsKey(it.next())) {
+                it.remove();
+                removed++;
+            }
+        }
+        log.info("Storage size cache: {} datasets, {} new or changed, {} removed", states.size(), changed.size(), removed);
+
+        List<Long> ids = new ArrayList<>(changed.keySet());
+        for (int i = 0; i < ids.size(); i += REFRESH_BATCH_SIZE) {
+            List<Long> batch = ids.subList(i, Math.min(i + REFRESH_BATCH_SIZE, ids.size()));
+            Map<Long, Aggregate> aggregates = new HashMap<>();
+            for (Aggregate aggregate : fetchAggregates(dbApi, batch)) {
+                aggregates.put(aggregate.getId(), aggregate);
+            }
+            for (Long id : batch) {
+                DatasetState state = changed.get(id);
+                Aggregate aggregate = aggregates.get(id);
+                entries.put(id, new Entry(id, state.getPid(), state.getFingerprint(),
+                    aggregate != null ? aggregate.getStorage() : 0L,
+                    aggregate != null ? aggregate.getFiles() : 0L));
+            }
+        }
+    }
+
+    public void save() throws IOException {
+        Path tempFile = file.resolveSibling(file.getFileName() + ".tmp");
+        try (var printer = new CSVPrinter(Files.newBufferedWriter(tempFile, StandardCharsets.UTF_8), CSVFormat.DEFAULT.builder()
+            .setHeader("ID", "PID", "FINGERPRINT", "STORAGE", "FILES")
+            .get())) {
+            for (Entry entry : entries.values()) {
+                printer.printRecord(entry.getId(), entry.getPid(), entry.getFingerprint(), entry.getStorage(), entry.getFiles());
+            }
+        }
+        Files.move(tempFile, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    private List<DatasetState> fetchDatasetStates(PooledDatabase dbApi) throws Exception {
+        String query = """
+            SELECT dvo.id,
+                   dvo.protocol,
+                   dvo.authority,
+                   dvo.identifier,
+                   COUNT(dsv.id)            AS VERSIONS,
+                   MAX(dsv.lastupdatetime)  AS LASTUPDATETIME
+            FROM dataset ds
+                     JOIN dvobject dvo ON ds.id = dvo.id
+                     JOIN datasetversion dsv ON ds.id = dsv.dataset_id
+            GROUP BY dvo.id, dvo.protocol, dvo.authority, dvo.identifier;
+            """;
+
+        try (var context = dbApi.query(query, (ResultSet rs) -> {
+            try {
+                var lastUpdateTime = rs.getTimestamp("LASTUPDATETIME");
+                return new DatasetState(
+                    rs.getLong("id"),
+                    PidCodec.format(rs.getString("protocol"), rs.getString("authority"), rs.getString("identifier")),
+                    rs.getLong("VERSIONS") + "@" + (lastUpdateTime != null ? lastUpdateTime.toInstant() : ""));
+            }
+            catch (Exception e) {
+                throw new RuntimeException("Failed to map ResultSet row to DatasetState", e);
+            }
+        })) {
+            return context.executeFor(Collections.singletonList(new Object[0]));
+        }
+    }
+
+    private List<Aggregate> fetchAggregates(PooledDatabase dbApi, List<Long> datasetIds) throws Exception {
+        // Count each datafile only once across the versions of a dataset, as in DatasetsGetStorageSize.
+        String query = """
+            SELECT dataset_id, SUM(filesize) AS STORAGE, COUNT(datafile_id) AS FILES
+            FROM (
+                SELECT DISTINCT dsv.dataset_id,
+                                df.id AS datafile_id,
+                                df.filesize
+                FROM datasetversion dsv
+                         LEFT JOIN filemetadata fmd ON dsv.id = fmd.datasetversion_id
+                         LEFT JOIN datafile df ON fmd.datafile_id = df.id
+                WHERE dsv.dataset_id = ANY (?)
+            ) AS unique_files
+            GROUP BY dataset_id;
+            """;
+
+        try (var context = dbApi.query(query, (ResultSet rs) -> {
+            try {
+                return new Aggregate(rs.getLong("dataset_id"), rs.getLong("STORAGE"), rs.getLong("FILES"));
+            }
+            catch (Exception e) {
+                throw new RuntimeException("Failed to map ResultSet row to Aggregate", e);
+            }
+        })) {
+            return context.executeFor(Collections.singletonList(new Object[] { datasetIds.toArray(new Long[0]) }));
+        }
+    }
+}
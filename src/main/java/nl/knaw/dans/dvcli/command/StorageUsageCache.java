@@ -0,0 +1,123 @@
+/*
+ * Copyright (C) 2026 DANS - Data Archiving and Networked Services (info@dans.knaw.nl)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.knaw.dans.dvcli.command;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import nl.knaw.dans.lib.dataverse.model.metrics.MetricsTreeNode;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Local, persistent cache of the dataverse metrics tree and the storage sizes of the dataverses, so that repeated runs of dataverses-collect-storage-usage (for
+ * example with an increasing max depth) do not fetch everything again. Entries are keyed by the base URL of the Dataverse instance and, for the sizes, the alias of
+ * the dataverse. An entry older than the time-to-live is treated as missing. The methods are synchronized, because sizes may be fetched concurrently.
+ */
+@Slf4j
+public class StorageUsageCache {
+
+    @Data
+    @NoArgsConstructor
+    @AllArgsConstructor
+    public static class CachedTree {
+        private long fetchedAt;
+        private MetricsTreeNode tree;
+    }
+
+    @Data
+    @NoArgsConstructor
+    @AllArgsConstructor
+    public static class CachedSize {
+        private long fetchedAt;
+        private long size;
+    }
+
+    @Data
+    @NoArgsConstructor
+    public static class Instance {
+        private CachedTree tree;
+        private Map<String, CachedSize> sizes = new HashMap<>();
+    }
+
+    private static final ObjectMapper mapper = new ObjectMapper().disable(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES);
+
+    private final Path file;
+    private final long ttlMillis;
+    private final Map<String, Instance> instances;
+    private final Instance instance;
+
+    private StorageUsageCache(Path file, String baseUrl, long ttlMillis, Map<String, Instance> instances) {
+        this.file = file;
+        this.ttlMillis = ttlMillis;
+        this.instances = instances;
+        this.instance = instances.computeIfAbsent(baseUrl, url -> new Instance());
+    }
+
+    public static StorageUsageCache load(Path file, String baseUrl, long ttlMillis) throws IOException {
+        Map<String, Instance> instances = new HashMap<>();
+        if (Files.exists(file)) {
+            instances = mapper.readValue(file.toFile(), new TypeReference<>() {
+            });
+            log.info("Loaded storage usage cache {}", file);
+        }
+        return new StorageUsageCache(file, baseUrl, ttlMillis, instances);
+    }
+
+    /**
+     * @return the cached metrics tree, or null if it is missing or expired
+     */
+    public synchronized MetricsTreeNode getTree() {
+        CachedTree cached = instance.getTree();
+        return cached != null && isFresh(cached.getFetchedAt()) ? cached.getTree() : null;
+    }
+
+    public synchronized void putTree(MetricsTreeNode tree) {
+        instance.setTree(new CachedTree(System.currentTimeMillis(), tree));
+    }
+
+    /**
+     * @param alias the dataverse alias
+     * @return the cached storage size, or null if it is missing or expired
+     */
+    public synchronized Long getSize(String alias) {
+        CachedSize cached = instance.getSizes().get(alias);
+        return cached != null && isFresh(cached.getFetchedAt()) ? cached.getSize() : null;
+    }
+
+    public synchronized void putSize(String alias, long size) {
+        instance.getSizes().put(alias, new CachedSize(System.currentTimeMillis(), size));
+    }
+
+    public synchronized void save() throws IOException {
+        Path tempFile = file.resolveSibling(file.getFileName() + ".tmp");
+        mapper.writeValue(tempFile.toFile(), instances);
+        Files.move(tempFile, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    private boolean isFresh(long fetchedAt) {
+        return System.currentTimeMillis() - fetchedAt < ttlMillis;
+    }
+}
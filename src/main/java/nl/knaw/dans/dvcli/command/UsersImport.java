@@ -22,16 +22,31 @@ import nl.knaw.dans.lib.dataverse.DataverseException;
 import nl.knaw.dans.lib.dataverse.model.user.BuiltinUser;
 import org.apache.commons.csv.CSVFormat;
 import org.apache.commons.csv.CSVParser;
+import org.apache.commons.csv.CSVPrinter;
 import org.apache.commons.csv.CSVRecord;
-import org.apache.commons.lang3.tuple.Pair;
 import picocli.CommandLine.Command;
 import picocli.CommandLine.Option;
 
 import java.io.BufferedReader;
+import java.io.IOException;
+import java.nio.ByteBuffer;
 import java.nio.file.Files;
 import java.nio.file.Path;
-import java.util.ArrayList;
-import java.util.List;
+import java.nio.file.StandardOpenOption;
+import java.sql.ResultSet;
+import java.time.Instant;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.HashSet;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
 
 @Slf4j
 @Command(name = "users-import",
@@ -39,6 +54,25 @@ import java.util.List;
          mixinStandardHelpOptions = true)
 @RequiredArgsConstructor
 public class UsersImport extends AbstractDatabaseCmd {
+    // Number of users per worker thread that may be read from the CSV ahead of being created.
+    private static final int QUEUE_SIZE_PER_THREAD = 4;
+
+    private enum Outcome {
+        // The user was created
+        CREATED,
+        // An account with the same username or email address already exists in the database
+        EXISTS,
+        // The user was created or found to exist in an earlier run, according to the journal
+        ALREADY_IMPORTED,
+        // The username or email address appears in an earlier row of the CSV
+        DUPLICATE,
+        // Dataverse responded with a status other than 200
+        REJECTED,
+        // The create call failed
+        ERROR,
+        DRY_RUN
+    }
+
     @Option(names = { "-i", "--input-csv" }, required = true, description = "CSV file containing users and initial passwords")
     private Path inputCsv;
 
@@ -48,56 +82,273 @@ public class UsersImport extends AbstractDatabaseCmd {
     @Option(names = { "--dry-run" }, description = "Print actions without modifying Dataverse or database")
     private boolean dryRun;
 
+    @Option(names = { "-c", "--concurrency" }, defaultValue = "1", description = "Maximum number of users that are created at the same time (default: 1)")
+    private int concurrency;
+
+    @Option(names = { "--max-rate" }, defaultValue = "0", description = "Maximum number of create calls started per second, across all threads; 0 means no limit "
+        + "(default: 0)")
+    private double maxRate;
+
+    @Option(names = { "-r", "--report" }, description = "CSV file to write the outcome per user to; a .gz or .zst suffix compresses the output")
+    private Path report;
+
+    @Option(names = { "-j", "--journal" }, description = "CSV file to which the outcome of every user is appended as soon as it is known. "
+        + "Together with --resume, this allows an interrupted import to be restarted")
+    private Path journal;
+
+    @Option(names = { "--resume" }, description = "Skip users that the journal records as created or existing in an earlier run. Requires --journal")
+    private boolean resume;
+
     private final DataverseClient dataverseClient;
+    private final PooledDatabase dbApi;
+
+    // Also holds the users of the CSV that are being created, so that a user that appears twice is not sent twice
+    private final Set<String> existingUserNames = ConcurrentHashMap.newKeySet();
+    private final Set<String> existingEmails = ConcurrentHashMap.newKeySet();
+    private final Set<String> alreadyImported = new HashSet<>();
+    private final Map<Outcome, Integer> outcomes = new EnumMap<>(Outcome.class);
+    private CSVPrinter reportPrinter;
+    private CSVPrinter journalPrinter;
 
     @Override
     protected Integer doCall() throws Exception {
+        if (concurrency < 1) {
+            System.err.println("--concurrency must be at least 1");
+            return 1;
+        }
+        if (resume && journal == null) {
+            System.err.println("--resume requires --journal");
+            return 1;
+        }
+        if (resume) {
+            readJournal();
+        }
+        fetchExistingUsers();
         log.info("Importing users from CSV: {}", inputCsv);
-        List<Pair<BuiltinUser, String>> users = readUsersFromCsv(inputCsv);
-        int count = 0;
-        int errors = 0;
-        for (var pair : users) {
-            var user = pair.getLeft();
-            var password = pair.getRight();
-            if (dryRun) {
-                log.warn("Dry-run: would create user {}", user.getUserName());
-                continue;
-            }
+        var rateLimiter = new RateLimiter(maxRate);
+        // The CSV is read while users are being created. The semaphore bounds the number of users that have been read but not yet created, so that memory use does
+        // not depend on the size of the input.
+        var pending = new Semaphore(concurrency * QUEUE_SIZE_PER_THREAD);
+        var failure = new AtomicReference<Exception>();
+        try (var reportCsv = createReportPrinter();
+            var journalCsv = createJournalPrinter();
+            BufferedReader reader = Files.newBufferedReader(inputCsv);
+            CSVParser parser = CSVFormat.DEFAULT.builder().setHeader().setSkipHeaderRecord(true).get().parse(reader)) {
+            reportPrinter = reportCsv;
+            journalPrinter = journalCsv;
+            ExecutorService executor = Executors.newFixedThreadPool(concurrency);
             try {
-                var response = dataverseClient.builtinUsers(builtinUsersKey)
-                    .create(user, password);
-                if (response.getHttpResponse().getCode() != 200) {
-                    log.warn("User import return status code: {}", response.getHttpResponse().getCode());
-                    continue;
+                for (CSVRecord record : parser) {
+                    if (failure.get() != null) {
+                        break;
+                    }
+                    var user = toBuiltinUser(record);
+                    var password = record.get("Password");
+                    if (alreadyImported.contains(toKey(user.getUserName()))) {
+                        log.debug("User {} was imported in an earlier run, skipping", user.getUserName());
+                        record(user, Outcome.ALREADY_IMPORTED, "");
+                        continue;
+                    }
+                    if (isExistingUser(user)) {
+                        log.info("User {} already exists, skipping", user.getUserName());
+                        record(user, Outcome.EXISTS, "");
+                        continue;
+                    }
+                    if (!claim(user)) {
+                        log.warn("User {} appears more than once in the CSV, skipping", user.getUserName());
+                        record(user, Outcome.DUPLICATE, "");
+                        continue;
+                    }
+                    pending.acquire();
+                    executor.execute(() -> {
+                        try {
+                            importUser(user, password, rateLimiter);
+                        }
+                        catch (Exception e) {
+                            failure.compareAndSet(null, e);
+                        }
+                        finally {
+                            pending.release();
+                        }
+                    });
                 }
-                log.info("Imported user {}", user.getUserName());
-                count++;
+                executor.shutdown();
+                while (!executor.awaitTermination(1, TimeUnit.MINUTES)) {
+                    log.debug("Waiting for pending users to be created");
+                }
+            }
+            finally {
+                executor.shutdownNow();
             }
-            catch (DataverseException e) {
-                log.error("Error creating user {}: {}", user.getUserName(), e.getMessage());
-                errors++;
+        }
+        if (failure.get() != null) {
+            throw failure.get();
+        }
+        System.err.println("Imported " + outcomes.getOrDefault(Outcome.CREATED, 0) + " users");
+        for (Outcome outcome : Outcome.values()) {
+            System.err.printf("  %-16s %d%n", outcome, outcomes.getOrDefault(outcome, 0));
+        }
+        // Users that could not be created make the import fail, so that scripts can detect it; they can be retried with --resume
+        return outcomes.getOrDefault(Outcome.ERROR, 0) + outcomes.getOrDefault(Outcome.REJECTED, 0) == 0 ? 0 : 1;
+    }
+
+    private void importUser(BuiltinUser user, String password, RateLimiter rateLimiter) throws Exception {
+        if (dryRun) {
+            log.warn("Dry-run: would create user {}", user.getUserName());
+            record(user, Outcome.DRY_RUN, "");
+            return;
+        }
+        rateLimiter.acquire();
+        Outcome outcome;
+        String message = "";
+        try {
+            var response = dataverseClient.builtinUsers(builtinUsersKey)
+                .create(user, password);
+            if (response.getHttpResponse().getCode() != 200) {
+                log.warn("User import return status code: {}", response.getHttpResponse().getCode());
+                outcome = Outcome.REJECTED;
+                message = "HTTP " + response.getHttpResponse().getCode();
             }
+            else {
+                log.info("Imported user {}", user.getUserName());
+                outcome = Outcome.CREATED;
+            }
+        }
+        catch (DataverseException | IOException e) {
+            // A failure to create one user, including a network error, is recorded for that user; only failures to write the report or journal abort the import
+            log.error("Error creating user {}: {}", user.getUserName(), e.getMessage());
+            outcome = Outcome.ERROR;
+            message = e.getMessage();
+        }
+        record(user, outcome, message);
+    }
+
+    private synchronized void record(BuiltinUser user, Outcome outcome, String message) throws IOException {
+        outcomes.merge(outcome, 1, Integer::sum);
+        if (reportPrinter != null) {
+            reportPrinter.printRecord(user.getUserName(), user.getEmail(), outcome, message);
+            reportPrinter.flush();
+        }
+        if (journalPrinter != null && outcome != Outcome.DRY_RUN && outcome != Outcome.ALREADY_IMPORTED) {
+            journalPrinter.printRecord(user.getUserName(), outcome, message, Instant.now());
+            journalPrinter.flush();
         }
-        System.err.println("Imported " + count + " users, with " + errors + " errors");
-        return 0;
     }
 
-    private List<Pair<BuiltinUser, String>> readUsersFromCsv(Path csvFile) throws Exception {
-        List<Pair<BuiltinUser, String>> users = new ArrayList<>();
-        try (BufferedReader reader = Files.newBufferedReader(csvFile);
+    private CSVPrinter createReportPrinter() throws IOException {
+        if (report == null) {
+            return null;
+        }
+        return new CSVPrinter(OutputFiles.newPrintWriter(report.toFile()), CSVFormat.DEFAULT.builder()
+            .setHeader("USERNAME", "EMAIL", "OUTCOME", "MESSAGE")
+            .get());
+    }
+
+    /**
+     * Opens the journal for appending. The header is only written when the journal is new, so that the journals of several runs form one CSV file. If the
+     * previous run was killed while writing a record, that record is ended first, so that it is not joined with the first record of this run.
+     */
+    private CSVPrinter createJournalPrinter() throws IOException {
+        if (journal == null) {
+            return null;
+        }
+        boolean isNew = !Files.exists(journal) || Files.size(journal) == 0;
+        var format = CSVFormat.DEFAULT.builder()
+            .setHeader("USERNAME", "OUTCOME", "MESSAGE", "TIMESTAMP")
+            .setSkipHeaderRecord(!isNew)
+            .get();
+        var writer = Files.newBufferedWriter(journal, StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+        if (!isNew && !endsWithNewline(journal)) {
+            writer.write(format.getRecordSeparator());
+        }
+        return new CSVPrinter(writer, format);
+    }
+
+    private static boolean endsWithNewline(Path file) throws IOException {
+        try (var channel = Files.newByteChannel(file)) {
+            var lastByte = ByteBuffer.allocate(1);
+            channel.position(channel.size() - 1).read(lastByte);
+            return lastByte.get(0) == '\n';
+        }
+    }
+
+    private void readJournal() throws IOException {
+        if (!Files.exists(journal)) {
+            log.info("Journal {} does not exist yet; nothing to resume", journal);
+            return;
+        }
+        try (BufferedReader reader = Files.newBufferedReader(journal);
             CSVParser parser = CSVFormat.DEFAULT.builder().setHeader().setSkipHeaderRecord(true).get().parse(reader)) {
             for (CSVRecord record : parser) {
-                var user = new BuiltinUser();
-                user.setUserName(record.get("Username"));
-                user.setFirstName(record.get("GivenName"));
-                user.setLastName(record.get("FamilyName"));
-                user.setEmail(record.get("Email"));
-                user.setAffiliation(record.get("Affiliation"));
-                user.setPosition(record.isMapped("Position") ? record.get("Position") : null);
-                String password = record.get("Password");
-                users.add(Pair.of(user, password));
+                // A record may be incomplete if the previous run was killed while writing it.
+                if (!record.isConsistent()) {
+                    continue;
+                }
+                String outcome = record.get("OUTCOME");
+                if (Outcome.CREATED.name().equals(outcome) || Outcome.EXISTS.name().equals(outcome)) {
+                    alreadyImported.add(toKey(record.get("USERNAME")));
+                }
             }
         }
-        return users;
+        log.info("Journal {} records {} users as imported", journal, alreadyImported.size());
+    }
+
+    /**
+     * Reads the usernames and email addresses of all existing accounts, so that users that are already present can be skipped without an API call. Dataverse
+     * compares both case-insensitively, so they are stored in lower case.
+     */
+    private void fetchExistingUsers() throws Exception {
+        String query = """
+            SELECT useridentifier, email
+            FROM authenticateduser;
+            """;
+
+        try (var context = dbApi.query(query, (ResultSet rs) -> {
+            try {
+                return Map.entry(toKey(rs.getString("useridentifier")), toKey(rs.getString("email")));
+            }
+            catch (Exception e) {
+                throw new RuntimeException("Failed to map ResultSet row to existing user", e);
+            }
+        })) {
+            for (var user : context.executeFor(Collections.singletonList(new Object[0]))) {
+                existingUserNames.add(user.getKey());
+                if (!user.getValue().isEmpty()) {
+                    existingEmails.add(user.getValue());
+                }
+            }
+        }
+        log.info("Found {} existing users in the database", existingUserNames.size());
+    }
+
+    private boolean isExistingUser(BuiltinUser user) {
+        return existingUserNames.contains(toKey(user.getUserName())) || existingEmails.contains(toKey(user.getEmail()));
+    }
+
+    /**
+     * Adds the username and email address of a user that is about to be created to the existing users.
+     *
+     * @return false if an earlier user of the CSV has the same username or email address
+     */
+    private boolean claim(BuiltinUser user) {
+        boolean newUserName = existingUserNames.add(toKey(user.getUserName()));
+        String email = toKey(user.getEmail());
+        boolean newEmail = email.isEmpty() || existingEmails.add(email);
+        return newUserName && newEmail;
+    }
+
+    private static String toKey(String value) {
+        return value == null ? "" : value.trim().toLowerCase(Locale.ROOT);
+    }
+
+    private static BuiltinUser toBuiltinUser(CSVRecord record) {
+        var user = new BuiltinUser();
+        user.setUserName(record.get("Username"));
+        user.setFirstName(record.get("GivenName"));
+        user.setLastName(record.get("FamilyName"));
+        user.setEmail(record.get("Email"));
+        user.setAffiliation(record.get("Affiliation"));
+        user.setPosition(record.isMapped("Position") ? record.get("Position") : null);
+        return user;
     }
 }
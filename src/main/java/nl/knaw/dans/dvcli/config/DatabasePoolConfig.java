@@ -0,0 +1,57 @@
+/*
+ * Copyright (C) 2026 DANS - Data Archiving and Networked Services (info@dans.knaw.nl)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.knaw.dans.dvcli.config;
+
+import io.dropwizard.util.Duration;
+import lombok.Data;
+
+import javax.validation.constraints.Min;
+import javax.validation.constraints.NotNull;
+
+/**
+ * Settings of the pool of database connections that is shared by the commands that query the Dataverse database. Prepared statements are cached per connection
+ * by the PostgreSQL JDBC driver, so a query that is executed repeatedly on a pooled connection is parsed and planned only once.
+ */
+@Data
+public class DatabasePoolConfig {
+    /**
+     * The maximum number of connections. Commands that run queries in parallel, such as datafiles-get-published --partitions, grow the pool to their parallelism.
+     */
+    @Min(1)
+    private int maxConnections = 4;
+
+    /**
+     * How long to wait for a free connection when all connections are in use.
+     */
+    @NotNull
+    private Duration connectionTimeout = Duration.seconds(30);
+
+    /**
+     * The number of executions of a prepared statement after which the driver switches to a server-side prepared statement.
+     */
+    @Min(0)
+    private int prepareThreshold = 1;
+
+    @Min(0)
+    private int preparedStatementCacheQueries = 256;
+
+    /**
+     * The number of rows that report commands fetch from the server at a time. Without a fetch size, the PostgreSQL JDBC driver reads the whole result set into
+     * memory before returning the first row.
+     */
+    @Min(1)
+    private int fetchSize = 1000;
+}
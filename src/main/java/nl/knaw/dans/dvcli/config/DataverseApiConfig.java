@@ -0,0 +1,34 @@
+/*
+ * Copyright (C) 2026 DANS - Data Archiving and Networked Services (info@dans.knaw.nl)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.knaw.dans.dvcli.config;
+
+import lombok.Data;
+import lombok.EqualsAndHashCode;
+import nl.knaw.dans.lib.util.DataverseClientFactory;
+
+import javax.validation.Valid;
+import javax.validation.constraints.NotNull;
+
+/**
+ * The settings of the Dataverse API client, extended with the settings of the database connection pool.
+ */
+@Data
+@EqualsAndHashCode(callSuper = true)
+public class DataverseApiConfig extends DataverseClientFactory {
+    @NotNull
+    @Valid
+    private DatabasePoolConfig databasePool = new DatabasePoolConfig();
+}
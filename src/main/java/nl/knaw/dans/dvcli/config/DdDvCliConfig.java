@@ -21,7 +21,6 @@ import io.dropwizard.core.Configuration;
 import lombok.Data;
 import lombok.EqualsAndHashCode;
 import nl.knaw.dans.convert.jackson.UriAddTrailingSlashConverter;
-import nl.knaw.dans.lib.util.DataverseClientFactory;
 
 import javax.validation.Valid;
 import javax.validation.constraints.NotNull;
@@ -32,7 +31,7 @@ import java.net.URI;
 public class DdDvCliConfig extends Configuration {
   @NotNull
   @Valid
-  private DataverseClientFactory api;
+  private DataverseApiConfig api;
 
   @Valid
   @JsonDeserialize(converter = UriAddTrailingSlashConverter.class)
@@ -0,0 +1,53 @@
+#!/bin/sh
+#
+# Copyright (C) 2026 DANS - Data Archiving and Networked Services (info@dans.knaw.nl)
+#
+# Licensed under the Apache License, Version 2.0 (the "License");
+# you may not use this file except in compliance with the License.
+# You may obtain a copy of the License at
+#
+# http://www.apache.org/licenses/LICENSE-2.0
+#
+# Unless required by applicable law or agreed to in writing, software
+# distributed under the License is distributed on an "AS IS" BASIS,
+# WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+# See the License for the specific language governing permissions and
+# limitations under the License.
+#
+
+# Creates a class-data-sharing archive for dv, so that the JVM can map the classes of dv and its libraries from the archive instead of loading and verifying them
+# from the jars on every start. The archive is created by a training run that shows the help of all subcommands, which loads the configuration, logging, picocli
+# and the command classes. The archive is only valid for this installation and this JVM; the dv launcher ignores it when it does not match, for example after
+# a JDK update. Failing to create it is not fatal: dv then starts without it.
+
+APPHOME=/opt/${dans-provider-name}/${project.artifactId}
+ARCHIVE=$APPHOME/bin/${project.artifactId}.jsa
+WORKDIR=$(mktemp -d)
+
+cat > $WORKDIR/config.yml << END
+api:
+  baseUrl: "http://localhost:8080"
+logging:
+  level: OFF
+  appenders: []
+END
+
+{
+    echo "--help"
+    for COMMAND in $(java -Ddans.default.config=$WORKDIR/config.yml -jar $APPHOME/bin/${project.artifactId}.jar --help 2> /dev/null \
+                     | sed -n 's/^  \([a-z][a-z-]*\) .*/\1/p; s/^  \([a-z][a-z-]*\)$/\1/p'); do
+        echo "$COMMAND --help"
+    done
+} > $WORKDIR/training.dv
+
+rm -f $ARCHIVE
+if (cd $WORKDIR && java -XX:ArchiveClassesAtExit=$ARCHIVE -Ddans.default.config=$WORKDIR/config.yml \
+                        -jar $APPHOME/bin/${project.artifactId}.jar batch --keep-going $WORKDIR/training.dv > /dev/null 2>&1) && [ -f $ARCHIVE ]; then
+    chmod 644 $ARCHIVE
+else
+    rm -f $ARCHIVE
+    echo "WARNING: could not create class-data-sharing archive $ARCHIVE; dv will start without it"
+fi
+
+rm -rf $WORKDIR
+exit 0
@@ -0,0 +1,23 @@
+#!/bin/sh
+#
+# Copyright (C) 2026 DANS - Data Archiving and Networked Services (info@dans.knaw.nl)
+#
+# Licensed under the Apache License, Version 2.0 (the "License");
+# you may not use this file except in compliance with the License.
+# You may obtain a copy of the License at
+#
+# http://www.apache.org/licenses/LICENSE-2.0
+#
+# Unless required by applicable law or agreed to in writing, software
+# distributed under the License is distributed on an "AS IS" BASIS,
+# WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+# See the License for the specific language governing permissions and
+# limitations under the License.
+#
+
+# The class-data-sharing archive is created after installation (see postinstall.sh), so it is not removed by rpm itself. On an upgrade ($1 = 1) the new version
+# creates a new archive.
+
+if [ "$1" = "0" ]; then
+    rm -f /opt/${dans-provider-name}/${project.artifactId}/bin/${project.artifactId}.jsa
+fi
@@ -0,0 +1,81 @@
+/*
+ * Copyright (C) 2026 DANS - Data Archiving and Networked Services (info@dans.knaw.nl)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.knaw.dans.dvcli;
+
+import nl.knaw.dans.dvcli.command.BannerList;
+import nl.knaw.dans.dvcli.command.DatasetLockList;
+import nl.knaw.dans.dvcli.config.DatabasePoolConfig;
+import nl.knaw.dans.dvcli.config.DataverseApiConfig;
+import nl.knaw.dans.dvcli.config.DdDvCliConfig;
+import nl.knaw.dans.lib.dataverse.DataverseClient;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mockito;
+import picocli.CommandLine;
+
+import java.io.PrintWriter;
+import java.io.StringWriter;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class CommandFactoryTest {
+    private final DataverseApiConfig api = Mockito.mock(DataverseApiConfig.class);
+    private CommandLine commandLine;
+
+    @BeforeEach
+    public void setUp() {
+        // Building the client and creating the pool are observed through the configuration they are created from
+        Mockito.when(api.build()).thenReturn(Mockito.mock(DataverseClient.class));
+        Mockito.when(api.getDatabaseUrl()).thenReturn("jdbc:postgresql://localhost:5432/dvndb");
+        Mockito.when(api.getDatabasePool()).thenReturn(new DatabasePoolConfig());
+        var config = new DdDvCliConfig();
+        config.setApi(api);
+        commandLine = new CommandLine(new DdDvCli());
+        new CommandFactory(config).addSubcommands(commandLine);
+        DdDvCli.registerConverters(commandLine);
+    }
+
+    @Test
+    public void help_does_not_build_the_client_or_the_database_pool() {
+        var usage = new StringWriter();
+        commandLine.setOut(new PrintWriter(usage));
+
+        assertThat(commandLine.execute("--help")).isZero();
+
+        assertThat(usage.toString()).contains("banner-list", "datasets-get-published", "dataset-locks-report", "shell");
+        Mockito.verify(api, Mockito.never()).build();
+        Mockito.verify(api, Mockito.never()).getDatabasePool();
+    }
+
+    @Test
+    public void database_commands_do_not_build_the_client() {
+        for (String name : new String[] { "dataset-locks-report", "datasets-get-published", "datafiles-get-published", "notifications-truncate" }) {
+            assertThat((Object) commandLine.getSubcommands().get(name).getCommand()).isNotNull();
+        }
+
+        Mockito.verify(api, Mockito.never()).build();
+        Mockito.verify(api, Mockito.times(1)).getDatabasePool();
+    }
+
+    @Test
+    public void api_commands_share_one_client_and_do_not_create_the_database_pool() {
+        assertThat((Object) commandLine.getSubcommands().get("banner-list").getCommand()).isInstanceOf(BannerList.class);
+        assertThat((Object) commandLine.getSubcommands().get("dataset-lock-list").getCommand()).isInstanceOf(DatasetLockList.class);
+
+        Mockito.verify(api, Mockito.times(1)).build();
+        Mockito.verify(api, Mockito.never()).getDatabasePool();
+    }
+}
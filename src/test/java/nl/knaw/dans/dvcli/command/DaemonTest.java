@@ -0,0 +1,193 @@
+/*
+ * Copyright (C) 2026 DANS - Data Archiving and Networked Services (info@dans.knaw.nl)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.knaw.dans.dvcli.command;
+
+import nl.knaw.dans.dvcli.DaemonProtocol;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import picocli.CommandLine;
+import picocli.CommandLine.Command;
+import picocli.CommandLine.Option;
+import picocli.CommandLine.Parameters;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.StandardProtocolFamily;
+import java.net.UnixDomainSocketAddress;
+import java.nio.channels.Channels;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class DaemonTest {
+
+    @Command(name = "dv")
+    static class Root {
+    }
+
+    @Command(name = "users-import")
+    static class Import {
+        @Option(names = { "-i", "--input-csv" })
+        private String inputCsv;
+
+        @Option(names = { "-k", "--builtin-users-key" })
+        private String builtinUsersKey;
+
+        @Option(names = { "--dry-run" })
+        private boolean dryRun;
+
+        @Parameters(arity = "0..*")
+        private String[] rest;
+    }
+
+    /**
+     * Prints its word on stdout, from the request thread and from a thread it starts, once the other request is executing as well. It also prints from a thread
+     * that existed before the requests.
+     */
+    @Command(name = "echo")
+    static class Echo implements Callable<Integer> {
+        private final CountDownLatch executing;
+        private final ExecutorService outside;
+
+        @Parameters(index = "0")
+        private String word;
+
+        Echo(CountDownLatch executing, ExecutorService outside) {
+            this.executing = executing;
+            this.outside = outside;
+        }
+
+        @Override
+        public Integer call() throws Exception {
+            executing.countDown();
+            if (!executing.await(10, TimeUnit.SECONDS)) {
+                return 2;
+            }
+            for (int i = 0; i < 100; i++) {
+                System.out.println(word + " " + i);
+            }
+            Thread thread = new Thread(() -> System.out.println(word + " from a thread of the request"));
+            thread.start();
+            thread.join();
+            outside.submit(() -> System.out.println(word + " from a thread outside the request")).get();
+            System.err.println(word + " done");
+            return 0;
+        }
+    }
+
+    private static class Response {
+        private final ByteArrayOutputStream stdout = new ByteArrayOutputStream();
+        private final ByteArrayOutputStream stderr = new ByteArrayOutputStream();
+        private int exitCode;
+    }
+
+    private static CommandLine commandLine() {
+        return new CommandLine(new Root()).addSubcommand(new CommandLine(new Import()));
+    }
+
+    @Test
+    public void redactSecrets_replaces_the_values_of_secret_options() {
+        assertThat(Daemon.redactSecrets(commandLine(), new String[] { "users-import", "-i", "users.csv", "-k", "s3cret", "--dry-run" }))
+            .containsExactly("users-import", "-i", "users.csv", "-k", "***", "--dry-run");
+        assertThat(Daemon.redactSecrets(commandLine(), new String[] { "users-import", "--builtin-users-key=s3cret", "-ks3cret" }))
+            .containsExactly("users-import", "--builtin-users-key=***", "-k***");
+    }
+
+    @Test
+    public void redactSecrets_leaves_unknown_commands_alone() {
+        assertThat(Daemon.redactSecrets(commandLine(), new String[] { "banner-list", "-k", "value" }))
+            .containsExactly("banner-list", "-k", "value");
+    }
+
+    @Test
+    public void concurrent_requests_each_get_their_own_output(@TempDir Path tempDir) throws Exception {
+        Path socket = tempDir.resolve("dv.sock");
+        var executing = new CountDownLatch(2);
+        var outside = Executors.newSingleThreadExecutor();
+        // Start the thread outside any request
+        outside.submit(() -> {
+        }).get();
+        Supplier<CommandLine> commandLineFactory = () -> new CommandLine(new Root()).addSubcommand(new CommandLine(new Echo(executing, outside)));
+        var originalOut = System.out;
+        var executor = Executors.newCachedThreadPool();
+        try {
+            Future<Integer> daemon = executor.submit(() -> new CommandLine(new Daemon(commandLineFactory)).execute("--socket", socket.toString()));
+            for (int i = 0; i < 100 && !Files.exists(socket); i++) {
+                Thread.sleep(50);
+            }
+            Future<Response> a = executor.submit(() -> request(socket, "echo", "a"));
+            Future<Response> b = executor.submit(() -> request(socket, "echo", "b"));
+
+            assertResponse(a.get(10, TimeUnit.SECONDS), "a");
+            assertResponse(b.get(10, TimeUnit.SECONDS), "b");
+
+            assertThat(new CommandLine(new Daemon(commandLineFactory)).execute("--socket", socket.toString(), "--stop")).isZero();
+            assertThat(daemon.get(10, TimeUnit.SECONDS)).isZero();
+            assertThat(System.out).isSameAs(originalOut);
+        }
+        finally {
+            executor.shutdownNow();
+            outside.shutdownNow();
+        }
+    }
+
+    private static void assertResponse(Response response, String word) {
+        List<String> expected = new ArrayList<>();
+        for (int i = 0; i < 100; i++) {
+            expected.add(word + " " + i);
+        }
+        expected.add(word + " from a thread of the request");
+        assertThat(response.exitCode).isZero();
+        assertThat(response.stdout.toString(StandardCharsets.UTF_8).lines()).containsExactlyElementsOf(expected);
+        assertThat(response.stderr.toString(StandardCharsets.UTF_8).lines()).containsExactly(word + " done");
+    }
+
+    private static Response request(Path socket, String... args) throws IOException {
+        try (var channel = SocketChannel.open(StandardProtocolFamily.UNIX)) {
+            channel.connect(UnixDomainSocketAddress.of(socket));
+            var out = new DataOutputStream(new BufferedOutputStream(Channels.newOutputStream(channel)));
+            var in = new DataInputStream(new BufferedInputStream(Channels.newInputStream(channel)));
+            DaemonProtocol.writeRequest(out, Path.of("").toAbsolutePath().toString(), args);
+            var response = new Response();
+            while (true) {
+                int channelByte = in.readByte();
+                if (channelByte == DaemonProtocol.EXIT) {
+                    response.exitCode = in.readInt();
+                    return response;
+                }
+                byte[] data = new byte[in.readInt()];
+                in.readFully(data);
+                (channelByte == DaemonProtocol.STDERR ? response.stderr : response.stdout).write(data);
+            }
+        }
+    }
+}
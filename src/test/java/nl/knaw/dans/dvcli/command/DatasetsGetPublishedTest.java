@@ -15,28 +15,31 @@
  */
 package nl.knaw.dans.dvcli.command;
 
-import nl.knaw.dans.lib.dataverse.DatabaseApi;
-import nl.knaw.dans.lib.dataverse.QueryContext;
 import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
 import org.mockito.ArgumentCaptor;
 import org.mockito.Mockito;
+import org.mockito.stubbing.Answer;
 import picocli.CommandLine;
 
 import java.io.PrintWriter;
 import java.io.StringWriter;
-import java.util.Collections;
-import java.util.List;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.SQLException;
 
 import static org.assertj.core.api.Assertions.assertThat;
 
 public class DatasetsGetPublishedTest {
+    @TempDir
+    Path tempDir;
 
     @Test
     public void archived_flag_generates_correct_query() throws Exception {
-        DatabaseApi dbApi = Mockito.mock(DatabaseApi.class);
-        QueryContext queryContext = Mockito.mock(QueryContext.class);
+        PooledDatabase dbApi = Mockito.mock(PooledDatabase.class);
+        PooledDatabase.Query queryContext = Mockito.mock(PooledDatabase.Query.class);
         Mockito.when(dbApi.query(Mockito.anyString(), Mockito.any())).thenReturn(queryContext);
-        Mockito.when(queryContext.executeFor(Mockito.any())).thenReturn(Collections.emptyList());
+        Mockito.when(queryContext.stream(Mockito.any(), Mockito.any())).thenReturn(0L);
 
         DatasetsGetPublished cmd = new DatasetsGetPublished(dbApi);
         CommandLine commandLine = new CommandLine(cmd);
@@ -49,9 +52,9 @@ public class DatasetsGetPublishedTest {
         String query = queryCaptor.getValue();
         assertThat(query).contains("dsv.archivalcopylocation::json ->> 'status' = 'success'");
 
-        ArgumentCaptor<List<Object[]>> paramsCaptor = ArgumentCaptor.forClass(List.class);
-        Mockito.verify(queryContext).executeFor(paramsCaptor.capture());
-        Object[] params = paramsCaptor.getValue().get(0);
+        ArgumentCaptor<Object[]> paramsCaptor = ArgumentCaptor.forClass(Object[].class);
+        Mockito.verify(queryContext).stream(paramsCaptor.capture(), Mockito.any());
+        Object[] params = paramsCaptor.getValue();
         
         // Expected order of params in fetchResults:
         // after, archived, unarchived, failedArchived, archived, unarchived, failedArchived, updateCurrent, updateCurrent
@@ -65,10 +68,10 @@ public class DatasetsGetPublishedTest {
 
     @Test
     public void unarchived_flag_generates_correct_query() throws Exception {
-        DatabaseApi dbApi = Mockito.mock(DatabaseApi.class);
-        QueryContext queryContext = Mockito.mock(QueryContext.class);
+        PooledDatabase dbApi = Mockito.mock(PooledDatabase.class);
+        PooledDatabase.Query queryContext = Mockito.mock(PooledDatabase.Query.class);
         Mockito.when(dbApi.query(Mockito.anyString(), Mockito.any())).thenReturn(queryContext);
-        Mockito.when(queryContext.executeFor(Mockito.any())).thenReturn(Collections.emptyList());
+        Mockito.when(queryContext.stream(Mockito.any(), Mockito.any())).thenReturn(0L);
 
         DatasetsGetPublished cmd = new DatasetsGetPublished(dbApi);
         CommandLine commandLine = new CommandLine(cmd);
@@ -81,9 +84,9 @@ public class DatasetsGetPublishedTest {
         String query = queryCaptor.getValue();
         assertThat(query).contains("(dsv.archivalcopylocation IS NULL OR dsv.archivalcopylocation::json ->> 'status' = 'failure')");
 
-        ArgumentCaptor<List<Object[]>> paramsCaptor = ArgumentCaptor.forClass(List.class);
-        Mockito.verify(queryContext).executeFor(paramsCaptor.capture());
-        Object[] params = paramsCaptor.getValue().get(0);
+        ArgumentCaptor<Object[]> paramsCaptor = ArgumentCaptor.forClass(Object[].class);
+        Mockito.verify(queryContext).stream(paramsCaptor.capture(), Mockito.any());
+        Object[] params = paramsCaptor.getValue();
 
         assertThat(params[1]).isEqualTo(false);
         assertThat(params[2]).isEqualTo(true);
@@ -92,10 +95,10 @@ public class DatasetsGetPublishedTest {
 
     @Test
     public void failed_archived_flag_generates_correct_query() throws Exception {
-        DatabaseApi dbApi = Mockito.mock(DatabaseApi.class);
-        QueryContext queryContext = Mockito.mock(QueryContext.class);
+        PooledDatabase dbApi = Mockito.mock(PooledDatabase.class);
+        PooledDatabase.Query queryContext = Mockito.mock(PooledDatabase.Query.class);
         Mockito.when(dbApi.query(Mockito.anyString(), Mockito.any())).thenReturn(queryContext);
-        Mockito.when(queryContext.executeFor(Mockito.any())).thenReturn(Collections.emptyList());
+        Mockito.when(queryContext.stream(Mockito.any(), Mockito.any())).thenReturn(0L);
 
         DatasetsGetPublished cmd = new DatasetsGetPublished(dbApi);
         CommandLine commandLine = new CommandLine(cmd);
@@ -108,9 +111,9 @@ public class DatasetsGetPublishedTest {
         String query = queryCaptor.getValue();
         assertThat(query).contains("(? = true AND dsv.archivalcopylocation IS NOT NULL AND dsv.archivalcopylocation::json ->> 'status' = 'failure')");
 
-        ArgumentCaptor<List<Object[]>> paramsCaptor = ArgumentCaptor.forClass(List.class);
-        Mockito.verify(queryContext).executeFor(paramsCaptor.capture());
-        Object[] params = paramsCaptor.getValue().get(0);
+        ArgumentCaptor<Object[]> paramsCaptor = ArgumentCaptor.forClass(Object[].class);
+        Mockito.verify(queryContext).stream(paramsCaptor.capture(), Mockito.any());
+        Object[] params = paramsCaptor.getValue();
 
         assertThat(params[1]).isEqualTo(false);
         assertThat(params[2]).isEqualTo(false);
@@ -119,10 +122,10 @@ public class DatasetsGetPublishedTest {
 
     @Test
     public void no_flags_generates_correct_query() throws Exception {
-        DatabaseApi dbApi = Mockito.mock(DatabaseApi.class);
-        QueryContext queryContext = Mockito.mock(QueryContext.class);
+        PooledDatabase dbApi = Mockito.mock(PooledDatabase.class);
+        PooledDatabase.Query queryContext = Mockito.mock(PooledDatabase.Query.class);
         Mockito.when(dbApi.query(Mockito.anyString(), Mockito.any())).thenReturn(queryContext);
-        Mockito.when(queryContext.executeFor(Mockito.any())).thenReturn(Collections.emptyList());
+        Mockito.when(queryContext.stream(Mockito.any(), Mockito.any())).thenReturn(0L);
 
         DatasetsGetPublished cmd = new DatasetsGetPublished(dbApi);
         CommandLine commandLine = new CommandLine(cmd);
@@ -135,12 +138,68 @@ public class DatasetsGetPublishedTest {
         String query = queryCaptor.getValue();
         assertThat(query).contains("(? = false AND ? = false AND ? = false)");
 
-        ArgumentCaptor<List<Object[]>> paramsCaptor = ArgumentCaptor.forClass(List.class);
-        Mockito.verify(queryContext).executeFor(paramsCaptor.capture());
-        Object[] params = paramsCaptor.getValue().get(0);
+        ArgumentCaptor<Object[]> paramsCaptor = ArgumentCaptor.forClass(Object[].class);
+        Mockito.verify(queryContext).stream(paramsCaptor.capture(), Mockito.any());
+        Object[] params = paramsCaptor.getValue();
 
         assertThat(params[1]).isEqualTo(false);
         assertThat(params[2]).isEqualTo(false);
         assertThat(params[3]).isEqualTo(false);
     }
+
+    @Test
+    public void batch_size_splits_output_into_zero_padded_files() throws Exception {
+        PooledDatabase dbApi = Mockito.mock(PooledDatabase.class);
+        PooledDatabase.Query queryContext = Mockito.mock(PooledDatabase.Query.class);
+        Mockito.when(dbApi.query(Mockito.anyString(), Mockito.any())).thenReturn(queryContext);
+        Mockito.when(queryContext.stream(Mockito.any(), Mockito.any())).thenAnswer(streamRows(
+            new DatasetsGetPublished.DatasetVersionInfo("doi:10.5072/A", 1L, 0L),
+            new DatasetsGetPublished.DatasetVersionInfo("doi:10.5072/B", 1L, 0L),
+            new DatasetsGetPublished.DatasetVersionInfo("doi:10.5072/C", 1L, 0L),
+            new DatasetsGetPublished.DatasetVersionInfo("doi:10.5072/D", 2L, 1L),
+            new DatasetsGetPublished.DatasetVersionInfo("doi:10.5072/E", 1L, 0L)));
+
+        DatasetsGetPublished cmd = new DatasetsGetPublished(dbApi);
+        CommandLine commandLine = new CommandLine(cmd);
+        commandLine.execute("-o", tempDir.resolve("out").toString(), "-b", "2");
+
+        try (var files = Files.list(tempDir)) {
+            assertThat(files.map(p -> p.getFileName().toString())).containsExactlyInAnyOrder("001-out.csv", "002-out.csv", "003-out.csv");
+        }
+        assertThat(Files.readAllLines(tempDir.resolve("002-out.csv"))).containsExactly("PID,MAJORVERSION,MINORVERSION", "doi:10.5072/C,1,0", "doi:10.5072/D,2,1");
+        assertThat(Files.readAllLines(tempDir.resolve("003-out.csv"))).containsExactly("PID,MAJORVERSION,MINORVERSION", "doi:10.5072/E,1,0");
+    }
+
+    @Test
+    public void batch_files_are_removed_when_the_query_fails_halfway() throws Exception {
+        PooledDatabase dbApi = Mockito.mock(PooledDatabase.class);
+        PooledDatabase.Query queryContext = Mockito.mock(PooledDatabase.Query.class);
+        Mockito.when(dbApi.query(Mockito.anyString(), Mockito.any())).thenReturn(queryContext);
+        Mockito.when(queryContext.stream(Mockito.any(), Mockito.any())).thenAnswer(invocation -> {
+            streamRows(
+                new DatasetsGetPublished.DatasetVersionInfo("doi:10.5072/A", 1L, 0L),
+                new DatasetsGetPublished.DatasetVersionInfo("doi:10.5072/B", 1L, 0L),
+                new DatasetsGetPublished.DatasetVersionInfo("doi:10.5072/C", 1L, 0L)).answer(invocation);
+            throw new SQLException("connection lost");
+        });
+
+        DatasetsGetPublished cmd = new DatasetsGetPublished(dbApi);
+        CommandLine commandLine = new CommandLine(cmd);
+        int exitCode = commandLine.execute("-o", tempDir.resolve("out").toString(), "-b", "2");
+
+        assertThat(exitCode).isNotZero();
+        try (var files = Files.list(tempDir)) {
+            assertThat(files).isEmpty();
+        }
+    }
+
+    private static Answer<Long> streamRows(DatasetsGetPublished.DatasetVersionInfo... rows) {
+        return invocation -> {
+            PooledDatabase.RowConsumer<DatasetsGetPublished.DatasetVersionInfo> consumer = invocation.getArgument(1);
+            for (var row : rows) {
+                consumer.accept(row);
+            }
+            return (long) rows.length;
+        };
+    }
 }
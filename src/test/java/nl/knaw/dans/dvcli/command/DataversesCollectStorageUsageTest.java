@@ -0,0 +1,154 @@
+/*
+ * Copyright (C) 2026 DANS - Data Archiving and Networked Services (info@dans.knaw.nl)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.knaw.dans.dvcli.command;
+
+import io.dropwizard.util.Duration;
+import nl.knaw.dans.lib.dataverse.DataverseClient;
+import nl.knaw.dans.lib.dataverse.model.DataMessage;
+import nl.knaw.dans.lib.dataverse.model.metrics.MetricsTreeNode;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.mockito.Mockito;
+import picocli.CommandLine;
+
+import java.net.URI;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class DataversesCollectStorageUsageTest {
+    private static final String HEADER = "depth,parentalias,alias,name,storagesize";
+
+    @TempDir
+    Path tempDir;
+
+    private final DataverseClient client = Mockito.mock(DataverseClient.class, Mockito.RETURNS_DEEP_STUBS);
+    private final PooledDatabase dbApi = Mockito.mock(PooledDatabase.class);
+    private final AtomicInteger inFlight = new AtomicInteger();
+    private final AtomicInteger maxInFlight = new AtomicInteger();
+
+    @BeforeEach
+    public void setUp() throws Exception {
+        // root
+        // ├── a
+        // │   └── b
+        // └── c
+        var b = node("b", "B");
+        var a = node("a", "A", b);
+        var c = node("c", "C");
+        var root = node("root", "Root", a, c);
+        Mockito.when(client.metrics().tree().getData()).thenReturn(root);
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void database_source_adds_the_size_of_each_dataverse_to_its_ancestors() throws Exception {
+        List<ResultSet> dataverses = List.of(dataverse(1, null, "root"), dataverse(2, 1L, "a"), dataverse(3, 2L, "b"), dataverse(4, 1L, "c"));
+        List<ResultSet> directSizes = List.of(directSize(1, 1), directSize(2, 10), directSize(3, 100), directSize(4, 1000));
+        Mockito.when(dbApi.query(Mockito.anyString(), Mockito.any())).thenAnswer(invocation -> {
+            String sql = invocation.getArgument(0);
+            Function<ResultSet, Object> mapper = invocation.getArgument(1);
+            PooledDatabase.Query<Object> query = Mockito.mock(PooledDatabase.Query.class);
+            List<Object> rows = new ArrayList<>();
+            for (ResultSet rs : sql.contains("alias") ? dataverses : directSizes) {
+                rows.add(mapper.apply(rs));
+            }
+            Mockito.when(query.executeFor(Mockito.any())).thenReturn(rows);
+            return query;
+        });
+        Path output = tempDir.resolve("usage.csv");
+
+        assertThat(execute("-s", "database", "-m", "2", "-f", "csv", "-o", output.toString())).isZero();
+
+        assertThat(Files.readAllLines(output)).containsExactly(
+            HEADER,
+            "1,root,a,A,110",
+            "2,a,b,B,100",
+            "1,root,c,C,1000");
+        Mockito.verify(client, Mockito.never()).dataverse(Mockito.anyString());
+    }
+
+    @Test
+    public void rows_are_written_in_tree_order_when_sizes_are_fetched_concurrently() throws Exception {
+        // The earlier rows take longest, so that they are done last
+        stubStorageSize("a", 1234, 300);
+        stubStorageSize("b", 100, 200);
+        stubStorageSize("c", 1000000, 0);
+        Path output = tempDir.resolve("usage.csv");
+
+        assertThat(execute("-m", "2", "-c", "3", "-f", "csv", "-o", output.toString())).isZero();
+
+        assertThat(Files.readAllLines(output)).containsExactly(
+            HEADER,
+            "1,root,a,A,1234",
+            "2,a,b,B,100",
+            "1,root,c,C,1000000");
+        assertThat(maxInFlight.get()).isGreaterThan(1);
+    }
+
+    private void stubStorageSize(String alias, long size, long millis) throws Exception {
+        DataMessage message = Mockito.mock(DataMessage.class);
+        Mockito.when(message.getMessage()).thenReturn(String.format(Locale.US, "Total size of the files stored in this dataverse: %,d bytes", size));
+        Mockito.when(client.dataverse(alias).getStorageSize().getData()).thenAnswer(invocation -> {
+            maxInFlight.accumulateAndGet(inFlight.incrementAndGet(), Math::max);
+            try {
+                Thread.sleep(millis);
+            }
+            finally {
+                inFlight.decrementAndGet();
+            }
+            return message;
+        });
+    }
+
+    private int execute(String... args) {
+        var commandLine = new CommandLine(new DataversesCollectStorageUsage(client, dbApi, URI.create("https://dataverse.example.org")));
+        commandLine.registerConverter(Duration.class, Duration::parse);
+        return commandLine.execute(args);
+    }
+
+    private static MetricsTreeNode node(String alias, String name, MetricsTreeNode... children) {
+        MetricsTreeNode node = Mockito.mock(MetricsTreeNode.class);
+        Mockito.when(node.getAlias()).thenReturn(alias);
+        Mockito.when(node.getName()).thenReturn(name);
+        Mockito.when(node.getChildren()).thenReturn(children.length > 0 ? List.of(children) : null);
+        return node;
+    }
+
+    private static ResultSet dataverse(long id, Long ownerId, String alias) throws SQLException {
+        ResultSet rs = Mockito.mock(ResultSet.class);
+        Mockito.when(rs.getLong("id")).thenReturn(id);
+        Mockito.when(rs.getObject("owner_id", Long.class)).thenReturn(ownerId);
+        Mockito.when(rs.getString("alias")).thenReturn(alias);
+        return rs;
+    }
+
+    private static ResultSet directSize(long dataverseId, long storage) throws SQLException {
+        ResultSet rs = Mockito.mock(ResultSet.class);
+        Mockito.when(rs.getLong("DATAVERSE_ID")).thenReturn(dataverseId);
+        Mockito.when(rs.getLong("STORAGE")).thenReturn(storage);
+        return rs;
+    }
+}
@@ -0,0 +1,51 @@
+/*
+ * Copyright (C) 2026 DANS - Data Archiving and Networked Services (info@dans.knaw.nl)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.knaw.dans.dvcli.command;
+
+import nl.knaw.dans.dvcli.command.NotificationTruncator.UserExcess;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class NotificationTruncatorTest {
+
+    @Test
+    public void partition_balances_excess_over_consecutive_users() {
+        var users = List.of(
+            new UserExcess(1, 110, 100),
+            new UserExcess(2, 20, 10),
+            new UserExcess(3, 100, 90),
+            new UserExcess(4, 60, 50),
+            new UserExcess(5, 60, 50));
+
+        var partitions = NotificationTruncator.partition(users, 3);
+
+        assertThat(partitions).hasSize(3);
+        assertThat(partitions.get(0)).extracting(UserExcess::getUserId).containsExactly(1L);
+        assertThat(partitions.get(1)).extracting(UserExcess::getUserId).containsExactly(2L, 3L);
+        assertThat(partitions.get(2)).extracting(UserExcess::getUserId).containsExactly(4L, 5L);
+    }
+
+    @Test
+    public void partition_returns_fewer_partitions_than_requested_for_few_users() {
+        var users = List.of(new UserExcess(7, 30, 20));
+
+        assertThat(NotificationTruncator.partition(users, 4)).hasSize(1);
+        assertThat(NotificationTruncator.partition(List.of(), 4)).isEmpty();
+    }
+}
@@ -0,0 +1,92 @@
+/*
+ * Copyright (C) 2026 DANS - Data Archiving and Networked Services (info@dans.knaw.nl)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.knaw.dans.dvcli.command;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.zip.GZIPInputStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class OutputFilesTest {
+
+    @Test
+    public void withExtension_adds_extension_before_compression_suffix() {
+        assertThat(OutputFiles.withExtension("report", ".csv")).isEqualTo("report.csv");
+        assertThat(OutputFiles.withExtension("report.csv", ".csv")).isEqualTo("report.csv");
+        assertThat(OutputFiles.withExtension("report.gz", ".csv")).isEqualTo("report.csv.gz");
+        assertThat(OutputFiles.withExtension("report.csv.zst", ".csv")).isEqualTo("report.csv.zst");
+        assertThat(OutputFiles.withExtension("REPORT.CSV.GZ", ".csv")).isEqualTo("REPORT.CSV.GZ");
+    }
+
+    @Test
+    public void newPrintWriter_compresses_gz_files(@TempDir Path tempDir) throws Exception {
+        File file = tempDir.resolve("report.csv.gz").toFile();
+        try (var out = OutputFiles.newPrintWriter(file)) {
+            out.println("PID,STORAGE,FILES");
+        }
+
+        try (var in = new GZIPInputStream(Files.newInputStream(file.toPath()))) {
+            assertThat(new String(in.readAllBytes(), StandardCharsets.UTF_8)).isEqualTo("PID,STORAGE,FILES" + System.lineSeparator());
+        }
+    }
+
+    @Test
+    public void newPrintWriter_writes_plain_text_without_compression_suffix(@TempDir Path tempDir) throws Exception {
+        File file = tempDir.resolve("report.csv").toFile();
+        try (var out = OutputFiles.newPrintWriter(file)) {
+            out.print("PID,STORAGE,FILES");
+        }
+
+        assertThat(Files.readString(file.toPath())).isEqualTo("PID,STORAGE,FILES");
+    }
+
+    @Test
+    public void newPrintWriter_writes_to_stdout_for_a_dash() throws Exception {
+        var originalOut = System.out;
+        var stdout = new ByteArrayOutputStream();
+        System.setOut(new PrintStream(stdout, true, StandardCharsets.UTF_8));
+        try {
+            var out = OutputFiles.newPrintWriter("-");
+            out.println("PID,STORAGE,FILES");
+            out.flush();
+        }
+        finally {
+            System.setOut(originalOut);
+        }
+
+        assertThat(stdout.toString(StandardCharsets.UTF_8)).isEqualTo("PID,STORAGE,FILES" + System.lineSeparator());
+    }
+
+    @Test
+    public void newPrintWriter_opens_the_named_file(@TempDir Path tempDir) throws Exception {
+        Path file = tempDir.resolve("report.csv.gz");
+        try (var out = OutputFiles.newPrintWriter(file.toString())) {
+            out.print("PID,STORAGE,FILES");
+        }
+
+        try (var in = new GZIPInputStream(Files.newInputStream(file))) {
+            assertThat(new String(in.readAllBytes(), StandardCharsets.UTF_8)).isEqualTo("PID,STORAGE,FILES");
+        }
+    }
+}
@@ -0,0 +1,212 @@
+/*
+ * Copyright (C) 2026 DANS - Data Archiving and Networked Services (info@dans.knaw.nl)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.knaw.dans.dvcli.command;
+
+import nl.knaw.dans.dvcli.command.ParquetOutput.ColumnType;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.DriverManager;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.time.Instant;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+public class ParquetOutputTest {
+
+    @Test
+    public void constructor_adds_extension_and_rejects_compression_suffix() {
+        assertThat(new ParquetOutput(new File("report")).getParquetFile()).isEqualTo(new File("report.parquet"));
+        assertThat(new ParquetOutput(new File("report.parquet")).getParquetFile()).isEqualTo(new File("report.parquet"));
+        assertThatThrownBy(() -> new ParquetOutput(new File("report.parquet.zst"))).isInstanceOf(IllegalArgumentException.class);
+    }
+
+    @Test
+    public void commit_writes_magic_and_footer_with_the_schema(@TempDir Path tempDir) throws Exception {
+        var parquetOutput = new ParquetOutput(tempDir.resolve("report").toFile());
+        try (parquetOutput) {
+            parquetOutput
+                .column("DATASET_PID", ColumnType.STRING)
+                .column("FILEID", ColumnType.INT64)
+                .column("PUBLICATION_TIMESTAMP", ColumnType.TIMESTAMP)
+                .open();
+            try (var rows = parquetOutput.newRowWriter()) {
+                rows.write("doi:10.5072/A", 1L, new Timestamp(0));
+                rows.write(null, 2L, null);
+            }
+            parquetOutput.commit();
+        }
+
+        byte[] bytes = Files.readAllBytes(parquetOutput.getParquetFile().toPath());
+        byte[] magic = "PAR1".getBytes(StandardCharsets.US_ASCII);
+        assertThat(Arrays.copyOfRange(bytes, 0, 4)).isEqualTo(magic);
+        assertThat(Arrays.copyOfRange(bytes, bytes.length - 4, bytes.length)).isEqualTo(magic);
+        int footerLength = ByteBuffer.wrap(bytes, bytes.length - 8, 4).order(ByteOrder.LITTLE_ENDIAN).getInt();
+        assertThat(footerLength).isBetween(1, bytes.length - 12);
+        String footer = new String(bytes, bytes.length - 8 - footerLength, footerLength, StandardCharsets.ISO_8859_1);
+        assertThat(footer).contains("DATASET_PID", "FILEID", "PUBLICATION_TIMESTAMP");
+    }
+
+    @Test
+    public void rows_of_several_row_writers_read_back_with_duckdb(@TempDir Path tempDir) throws Exception {
+        String[] checksumTypes = { "MD5", "SHA-1", "SHA-256" };
+        var parquetOutput = new ParquetOutput(tempDir.resolve("report").toFile());
+        try (parquetOutput) {
+            parquetOutput
+                .column("DATASET_PID", ColumnType.STRING)
+                .column("FILEID", ColumnType.INT64)
+                .column("SIZE", ColumnType.DOUBLE)
+                .column("CHECKSUM_TYPE", ColumnType.STRING)
+                .column("PUBLICATION_TIMESTAMP", ColumnType.TIMESTAMP)
+                .open();
+            try (var rows1 = parquetOutput.newRowWriter(); var rows2 = parquetOutput.newRowWriter()) {
+                for (int i = 0; i < 1000; i++) {
+                    rows1.write("doi:10.5072/DS" + i / 10, (long) i, i % 7 == 0 ? null : i * 1.5, checksumTypes[i / 100 % 3],
+                        i % 5 == 0 ? null : new Timestamp(1700000000000L + i));
+                    if (i % 2 == 0) {
+                        rows2.write(null, 1000L + i, 0.5, i % 4 == 0 ? null : "UNF", Instant.ofEpochMilli(i));
+                    }
+                }
+            }
+            parquetOutput.commit();
+        }
+        String file = parquetOutput.getParquetFile().getAbsolutePath();
+
+        try (var connection = DriverManager.getConnection("jdbc:duckdb:"); var statement = connection.createStatement()) {
+            var types = new LinkedHashMap<String, String>();
+            try (var rs = statement.executeQuery("DESCRIBE SELECT * FROM read_parquet('" + file + "')")) {
+                while (rs.next()) {
+                    types.put(rs.getString("column_name"), rs.getString("column_type"));
+                }
+            }
+            assertThat(types.keySet()).containsExactly("DATASET_PID", "FILEID", "SIZE", "CHECKSUM_TYPE", "PUBLICATION_TIMESTAMP");
+            assertThat(types.get("DATASET_PID")).isEqualTo("VARCHAR");
+            assertThat(types.get("FILEID")).isEqualTo("BIGINT");
+            assertThat(types.get("SIZE")).isEqualTo("DOUBLE");
+            assertThat(types.get("CHECKSUM_TYPE")).isEqualTo("VARCHAR");
+            assertThat(types.get("PUBLICATION_TIMESTAMP")).startsWith("TIMESTAMP");
+
+            try (var rs = statement.executeQuery("SELECT count(*), count(DISTINCT DATASET_PID), count(DATASET_PID), sum(FILEID), count(SIZE), sum(SIZE), "
+                + "count(CHECKSUM_TYPE), count(PUBLICATION_TIMESTAMP) FROM read_parquet('" + file + "')")) {
+                assertThat(rs.next()).isTrue();
+                assertThat(rs.getLong(1)).isEqualTo(1500);
+                assertThat(rs.getLong(2)).isEqualTo(100);
+                assertThat(rs.getLong(3)).isEqualTo(1000);
+                assertThat(rs.getLong(4)).isEqualTo(999 * 1000 / 2 + 500 * 1000 + 998 * 500 / 2);
+                assertThat(rs.getLong(5)).isEqualTo(1000 - 143 + 500);
+                assertThat(rs.getDouble(6)).isEqualTo(1.5 * (999 * 1000 / 2 - 7 * 142 * 143 / 2) + 0.5 * 500);
+                assertThat(rs.getLong(7)).isEqualTo(1000 + 250);
+                assertThat(rs.getLong(8)).isEqualTo(800 + 500);
+            }
+
+            try (var rs = statement.executeQuery("SELECT DATASET_PID, SIZE, CHECKSUM_TYPE, epoch_ms(PUBLICATION_TIMESTAMP) AS MILLIS "
+                + "FROM read_parquet('" + file + "') WHERE FILEID IN (123, 135, 1002, 1004) ORDER BY FILEID")) {
+                assertRow(rs, "doi:10.5072/DS12", 184.5, "SHA-1", 1700000000123L);
+                assertRow(rs, "doi:10.5072/DS13", 202.5, "SHA-1", null);
+                assertRow(rs, null, 0.5, "UNF", 2L);
+                assertRow(rs, null, 0.5, null, 4L);
+                assertThat(rs.next()).isFalse();
+            }
+
+            try (var rs = statement.executeQuery("SELECT path_in_schema, encodings, stats_min, stats_max, stats_null_count "
+                + "FROM parquet_metadata('" + file + "') ORDER BY row_group_id, column_id")) {
+                var encodings = new LinkedHashMap<String, String>();
+                while (rs.next()) {
+                    encodings.merge(rs.getString("path_in_schema"), rs.getString("encodings"), (a, b) -> a.contains("RLE_DICTIONARY") ? a : b);
+                    if (rs.getString("path_in_schema").equals("FILEID")) {
+                        assertThat(rs.getString("stats_min")).isIn("0", "1000");
+                        assertThat(rs.getString("stats_max")).isIn("999", "1998");
+                        assertThat(rs.getLong("stats_null_count")).isZero();
+                    }
+                }
+                assertThat(encodings.get("DATASET_PID")).contains("RLE_DICTIONARY");
+                assertThat(encodings.get("CHECKSUM_TYPE")).contains("RLE_DICTIONARY");
+                assertThat(encodings.get("FILEID")).doesNotContain("RLE_DICTIONARY");
+            }
+        }
+    }
+
+    @Test
+    public void string_column_with_a_large_dictionary_is_plain_encoded(@TempDir Path tempDir) throws Exception {
+        int numRows = 2 * ParquetOutput.MAX_DICTIONARY_SIZE / 24;
+        var parquetOutput = new ParquetOutput(tempDir.resolve("report").toFile());
+        try (parquetOutput) {
+            parquetOutput.column("PID", ColumnType.STRING).open();
+            try (var rows = parquetOutput.newRowWriter()) {
+                for (int i = 0; i < numRows; i++) {
+                    rows.write(String.format("doi:10.5072/FK2/%08d", i));
+                }
+            }
+            parquetOutput.commit();
+        }
+        String file = parquetOutput.getParquetFile().getAbsolutePath();
+
+        try (var connection = DriverManager.getConnection("jdbc:duckdb:"); var statement = connection.createStatement()) {
+            try (var rs = statement.executeQuery("SELECT count(DISTINCT PID), min(PID), max(PID) FROM read_parquet('" + file + "')")) {
+                assertThat(rs.next()).isTrue();
+                assertThat(rs.getLong(1)).isEqualTo(numRows);
+                assertThat(rs.getString(2)).isEqualTo("doi:10.5072/FK2/00000000");
+                assertThat(rs.getString(3)).isEqualTo(String.format("doi:10.5072/FK2/%08d", numRows - 1));
+            }
+            try (var rs = statement.executeQuery("SELECT encodings FROM parquet_metadata('" + file + "')")) {
+                assertThat(rs.next()).isTrue();
+                assertThat(rs.getString(1)).doesNotContain("RLE_DICTIONARY");
+                assertThat(rs.next()).isFalse();
+            }
+        }
+    }
+
+    @Test
+    public void close_without_commit_deletes_the_file(@TempDir Path tempDir) throws Exception {
+        var parquetOutput = new ParquetOutput(tempDir.resolve("report.parquet").toFile());
+        try (parquetOutput) {
+            parquetOutput.column("PID", ColumnType.STRING).open();
+            try (var rows = parquetOutput.newRowWriter()) {
+                rows.write("doi:10.5072/A");
+            }
+        }
+
+        assertThat(parquetOutput.getParquetFile()).doesNotExist();
+    }
+
+    @Test
+    public void write_rejects_a_row_with_the_wrong_number_of_values(@TempDir Path tempDir) throws Exception {
+        try (var parquetOutput = new ParquetOutput(tempDir.resolve("report.parquet").toFile())) {
+            parquetOutput.column("PID", ColumnType.STRING).column("FILES", ColumnType.INT64).open();
+            var rows = parquetOutput.newRowWriter();
+            assertThatThrownBy(() -> rows.write("doi:10.5072/A")).isInstanceOf(IllegalArgumentException.class);
+        }
+    }
+
+    private static void assertRow(ResultSet rs, String pid, Double size, String checksumType, Long millis) throws SQLException {
+        assertThat(rs.next()).isTrue();
+        assertThat(rs.getString("DATASET_PID")).isEqualTo(pid);
+        assertThat(rs.getObject("SIZE")).isEqualTo(size);
+        assertThat(rs.getString("CHECKSUM_TYPE")).isEqualTo(checksumType);
+        assertThat(rs.getObject("MILLIS")).isEqualTo(millis);
+    }
+}
@@ -0,0 +1,103 @@
+/*
+ * Copyright (C) 2026 DANS - Data Archiving and Networked Services (info@dans.knaw.nl)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.knaw.dans.dvcli.command;
+
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mockito;
+
+import java.util.List;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+public class PidCodecTest {
+
+    @Test
+    public void parse_splits_doi_with_shoulder() {
+        var pid = PidCodec.parse("doi:10.5072/FK2/ABCDEF");
+        assertThat(pid.getProtocol()).isEqualTo("doi");
+        assertThat(pid.getAuthority()).isEqualTo("10.5072");
+        assertThat(pid.getIdentifier()).isEqualTo("FK2/ABCDEF");
+        assertThat(pid.toString()).isEqualTo("doi:10.5072/FK2/ABCDEF");
+    }
+
+    @Test
+    public void parse_splits_handle() {
+        var pid = PidCodec.parse("hdl:10411/XYZ");
+        assertThat(pid.getProtocol()).isEqualTo("hdl");
+        assertThat(pid.getAuthority()).isEqualTo("10411");
+        assertThat(pid.getIdentifier()).isEqualTo("XYZ");
+    }
+
+    @Test
+    public void parse_rejects_malformed_pids() {
+        assertThatThrownBy(() -> PidCodec.parse("10.5072/FK2/ABCDEF")).isInstanceOf(IllegalArgumentException.class);
+        assertThatThrownBy(() -> PidCodec.parse("doi:10.5072")).isInstanceOf(IllegalArgumentException.class);
+        assertThatThrownBy(() -> PidCodec.parse("doi:/ABC")).isInstanceOf(IllegalArgumentException.class);
+        assertThatThrownBy(() -> PidCodec.parse("doi:10.5072/")).isInstanceOf(IllegalArgumentException.class);
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void resolveDatasetIds_binds_components_as_parallel_arrays() throws Exception {
+        PooledDatabase dbApi = Mockito.mock(PooledDatabase.class);
+        PooledDatabase.Query queryContext = Mockito.mock(PooledDatabase.Query.class);
+        Mockito.when(dbApi.query(Mockito.anyString(), Mockito.any())).thenReturn(queryContext);
+        Mockito.when(queryContext.executeFor(Mockito.any())).thenReturn(List.of(Map.entry("doi:10.5072/FK2/A", 1L)));
+
+        var ids = PidCodec.resolveDatasetIds(dbApi, List.of("doi:10.5072/FK2/A", "hdl:10411/B", "doi:10.5072/FK2/A", "not-a-pid"));
+
+        assertThat(ids).containsExactly(Map.entry("doi:10.5072/FK2/A", 1L));
+        ArgumentCaptor<String> queryCaptor = ArgumentCaptor.forClass(String.class);
+        Mockito.verify(dbApi).query(queryCaptor.capture(), Mockito.any());
+        assertThat(queryCaptor.getValue()).contains("unnest(?::text[], ?::text[], ?::text[])").doesNotContain("ANY").doesNotContain("||");
+
+        ArgumentCaptor<List<Object[]>> paramsCaptor = ArgumentCaptor.forClass(List.class);
+        Mockito.verify(queryContext).executeFor(paramsCaptor.capture());
+        Object[] params = paramsCaptor.getValue().get(0);
+        assertThat((String[]) params[0]).containsExactly("doi", "hdl");
+        assertThat((String[]) params[1]).containsExactly("10.5072", "10411");
+        assertThat((String[]) params[2]).containsExactly("FK2/A", "B");
+    }
+
+    @Test
+    public void resolveDatasetIds_does_not_query_without_valid_pids() throws Exception {
+        PooledDatabase dbApi = Mockito.mock(PooledDatabase.class);
+
+        assertThat(PidCodec.resolveDatasetIds(dbApi, List.of("not-a-pid"))).isEmpty();
+        Mockito.verifyNoInteractions(dbApi);
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void resolveDatasets_takes_numbers_as_database_ids_and_drops_unknown_references() throws Exception {
+        PooledDatabase dbApi = Mockito.mock(PooledDatabase.class);
+        PooledDatabase.Query queryContext = Mockito.mock(PooledDatabase.Query.class);
+        Mockito.when(dbApi.query(Mockito.anyString(), Mockito.any())).thenReturn(queryContext);
+        Mockito.when(queryContext.executeFor(Mockito.any())).thenReturn(
+            List.of(Map.entry("doi:10.5072/FK2/A", 1L)),
+            List.of(42L));
+
+        var ids = PidCodec.resolveDatasets(dbApi, List.of("doi:10.5072/FK2/A", "doi:10.5072/FK2/B", "42", "43"));
+
+        assertThat(ids).containsOnly(Map.entry("doi:10.5072/FK2/A", 1L), Map.entry("42", 42L));
+        ArgumentCaptor<List<Object[]>> paramsCaptor = ArgumentCaptor.forClass(List.class);
+        Mockito.verify(queryContext, Mockito.times(2)).executeFor(paramsCaptor.capture());
+        assertThat((Long[]) paramsCaptor.getAllValues().get(1).get(0)[0]).containsExactlyInAnyOrder(42L, 43L);
+    }
+}
@@ -0,0 +1,301 @@
+/*
+ * Copyright (C) 2026 DANS - Data Archiving and Networked Services (info@dans.knaw.nl)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.knaw.dans.dvcli.command;
+
+import io.dropwizard.util.Duration;
+import nl.knaw.dans.dvcli.config.DatabasePoolConfig;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.InOrder;
+import org.mockito.Mockito;
+
+import java.io.IOException;
+import java.sql.Connection;
+import java.sql.Driver;
+import java.sql.DriverManager;
+import java.sql.DriverPropertyInfo;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.SQLFeatureNotSupportedException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Logger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+public class PooledDatabaseTest {
+    private static final String URL = "jdbc:dvcli-pool-test:dataverse";
+    private static final List<Object[]> NO_PARAMETERS = Collections.singletonList(new Object[0]);
+
+    private final TestDriver driver = new TestDriver();
+    private final Map<Connection, PreparedStatement> statements = new HashMap<>();
+
+    /**
+     * Hands out the connections that a test queued, or else a connection whose queries return the ids 1, 2 and 3.
+     */
+    private class TestDriver implements Driver {
+        private final Deque<Connection> queued = new ArrayDeque<>();
+        private final List<Connection> opened = new ArrayList<>();
+
+        @Override
+        public Connection connect(String url, Properties info) throws SQLException {
+            if (!acceptsURL(url)) {
+                return null;
+            }
+            Connection connection = queued.isEmpty() ? newConnection(1L, 2L, 3L) : queued.poll();
+            opened.add(connection);
+            return connection;
+        }
+
+        @Override
+        public boolean acceptsURL(String url) {
+            return url.startsWith(URL);
+        }
+
+        @Override
+        public DriverPropertyInfo[] getPropertyInfo(String url, Properties info) {
+            return new DriverPropertyInfo[0];
+        }
+
+        @Override
+        public int getMajorVersion() {
+            return 1;
+        }
+
+        @Override
+        public int getMinorVersion() {
+            return 0;
+        }
+
+        @Override
+        public boolean jdbcCompliant() {
+            return false;
+        }
+
+        @Override
+        public Logger getParentLogger() throws SQLFeatureNotSupportedException {
+            throw new SQLFeatureNotSupportedException();
+        }
+    }
+
+    @BeforeEach
+    public void registerDriver() throws SQLException {
+        DriverManager.registerDriver(driver);
+    }
+
+    @AfterEach
+    public void deregisterDriver() throws SQLException {
+        DriverManager.deregisterDriver(driver);
+    }
+
+    @Test
+    public void stream_reads_in_a_read_only_transaction_with_the_fetch_size() throws Exception {
+        var config = new DatabasePoolConfig();
+        config.setFetchSize(10);
+        try (var db = new PooledDatabase(URL, "user", "secret", config)) {
+            List<Long> rows = new ArrayList<>();
+
+            long count = db.query("SELECT id FROM dvobject WHERE owner_id = ?", PooledDatabaseTest::id).stream(new Object[] { 42L }, rows::add);
+
+            assertThat(count).isEqualTo(3);
+            assertThat(rows).containsExactly(1L, 2L, 3L);
+            Connection connection = driver.opened.get(0);
+            PreparedStatement statement = statements.get(connection);
+            InOrder inOrder = Mockito.inOrder(connection, statement);
+            inOrder.verify(connection).setReadOnly(true);
+            inOrder.verify(connection).setAutoCommit(false);
+            inOrder.verify(connection).prepareStatement(Mockito.anyString(), Mockito.eq(ResultSet.TYPE_FORWARD_ONLY), Mockito.eq(ResultSet.CONCUR_READ_ONLY));
+            inOrder.verify(statement).setFetchSize(10);
+            inOrder.verify(statement).setObject(1, 42L);
+            inOrder.verify(statement).executeQuery();
+            inOrder.verify(connection).rollback();
+            inOrder.verify(connection).setAutoCommit(true);
+            inOrder.verify(connection).setReadOnly(false);
+        }
+    }
+
+    @Test
+    public void connection_is_reused_by_the_next_query() throws Exception {
+        try (var db = new PooledDatabase(URL, "user", "secret", new DatabasePoolConfig())) {
+            db.query("SELECT id FROM dvobject", PooledDatabaseTest::id).stream(new Object[0], row -> {
+            });
+
+            assertThat(db.query("SELECT id FROM dataset", PooledDatabaseTest::id).executeFor(NO_PARAMETERS)).containsExactly(1L, 2L, 3L);
+            assertThat(driver.opened).hasSize(1);
+            Mockito.verify(driver.opened.get(0), Mockito.never()).close();
+        }
+    }
+
+    @Test
+    public void close_closes_the_idle_connections() throws Exception {
+        var db = new PooledDatabase(URL, "user", "secret", new DatabasePoolConfig());
+        db.query("SELECT id FROM dataset", PooledDatabaseTest::id).executeFor(NO_PARAMETERS);
+
+        db.close();
+
+        Mockito.verify(driver.opened.get(0)).close();
+    }
+
+    @Test
+    public void stream_reports_the_query_error_and_closes_the_connection_when_the_rollback_fails() throws Exception {
+        Connection lost = newConnection();
+        Mockito.doThrow(new SQLException("connection lost")).when(statements.get(lost)).executeQuery();
+        Mockito.doThrow(new SQLException("rollback failed")).when(lost).rollback();
+        driver.queued.add(lost);
+        try (var db = new PooledDatabase(URL, "user", "secret", new DatabasePoolConfig())) {
+
+            assertThatThrownBy(() -> db.query("SELECT id FROM dvobject", PooledDatabaseTest::id).stream(new Object[0], row -> {
+            }))
+                .isInstanceOf(SQLException.class)
+                .hasMessage("connection lost")
+                .satisfies(e -> assertThat(e.getSuppressed()).extracting(Throwable::getMessage).containsExactly("rollback failed"));
+
+            Mockito.verify(lost).close();
+            assertThat(db.query("SELECT id FROM dataset", PooledDatabaseTest::id).executeFor(NO_PARAMETERS)).containsExactly(1L, 2L, 3L);
+            assertThat(driver.opened).hasSize(2);
+        }
+    }
+
+    @Test
+    public void stream_rolls_back_and_keeps_the_connection_when_the_consumer_fails() throws Exception {
+        try (var db = new PooledDatabase(URL, "user", "secret", new DatabasePoolConfig())) {
+
+            assertThatThrownBy(() -> db.query("SELECT id FROM dvobject", PooledDatabaseTest::id).stream(new Object[0], row -> {
+                throw new IOException("disk full");
+            }))
+                .isInstanceOf(IOException.class)
+                .hasMessage("disk full");
+
+            Connection connection = driver.opened.get(0);
+            Mockito.verify(connection).rollback();
+            Mockito.verify(connection).setAutoCommit(true);
+            Mockito.verify(connection, Mockito.never()).close();
+            db.query("SELECT id FROM dataset", PooledDatabaseTest::id).executeFor(NO_PARAMETERS);
+            assertThat(driver.opened).hasSize(1);
+        }
+    }
+
+    @Test
+    public void executeFor_closes_a_connection_on_which_the_query_failed() throws Exception {
+        Connection broken = newConnection();
+        Mockito.doThrow(new SQLException("connection lost")).when(statements.get(broken)).executeQuery();
+        driver.queued.add(broken);
+        try (var db = new PooledDatabase(URL, "user", "secret", new DatabasePoolConfig())) {
+
+            assertThatThrownBy(() -> db.query("SELECT id FROM dataset", PooledDatabaseTest::id).executeFor(NO_PARAMETERS))
+                .isInstanceOf(SQLException.class)
+                .hasMessage("connection lost");
+
+            Mockito.verify(broken).close();
+            assertThat(db.query("SELECT id FROM dataset", PooledDatabaseTest::id).executeFor(NO_PARAMETERS)).containsExactly(1L, 2L, 3L);
+            assertThat(driver.opened).hasSize(2);
+        }
+    }
+
+    @Test
+    public void idle_connection_that_is_no_longer_valid_is_closed_and_replaced() throws Exception {
+        try (var db = new PooledDatabase(URL, "user", "secret", new DatabasePoolConfig())) {
+            db.query("SELECT id FROM dataset", PooledDatabaseTest::id).executeFor(NO_PARAMETERS);
+            Connection expired = driver.opened.get(0);
+            Mockito.when(expired.isValid(Mockito.anyInt())).thenReturn(false);
+
+            assertThat(db.query("SELECT id FROM dataset", PooledDatabaseTest::id).executeFor(NO_PARAMETERS)).containsExactly(1L, 2L, 3L);
+
+            Mockito.verify(expired).close();
+            assertThat(driver.opened).hasSize(2);
+        }
+    }
+
+    @Test
+    public void borrow_times_out_when_all_connections_are_in_use() throws Exception {
+        var config = new DatabasePoolConfig();
+        config.setMaxConnections(1);
+        config.setConnectionTimeout(Duration.milliseconds(50));
+        try (var db = new PooledDatabase(URL, "user", "secret", config)) {
+            var nested = db.query("SELECT id FROM dataset", PooledDatabaseTest::id);
+
+            db.query("SELECT id FROM dvobject", PooledDatabaseTest::id).stream(new Object[0], row ->
+                assertThatThrownBy(() -> nested.executeFor(NO_PARAMETERS))
+                    .isInstanceOf(SQLException.class)
+                    .hasMessage("Timed out waiting for a database connection"));
+
+            assertThat(driver.opened).hasSize(1);
+        }
+    }
+
+    @Test
+    public void ensureCapacity_allows_more_connections_at_the_same_time() throws Exception {
+        var config = new DatabasePoolConfig();
+        config.setMaxConnections(1);
+        config.setConnectionTimeout(Duration.milliseconds(50));
+        try (var db = new PooledDatabase(URL, "user", "secret", config)) {
+            db.ensureCapacity(2);
+            db.ensureCapacity(1);
+            var nested = db.query("SELECT id FROM dataset", PooledDatabaseTest::id);
+            AtomicInteger nestedRows = new AtomicInteger();
+
+            db.query("SELECT id FROM dvobject", PooledDatabaseTest::id).stream(new Object[0], row -> {
+                try {
+                    nestedRows.addAndGet(nested.executeFor(NO_PARAMETERS).size());
+                }
+                catch (SQLException e) {
+                    throw new IOException(e);
+                }
+            });
+
+            assertThat(nestedRows).hasValue(9);
+            assertThat(driver.opened).hasSize(2);
+        }
+    }
+
+    private Connection newConnection(Long... ids) throws SQLException {
+        Connection connection = Mockito.mock(Connection.class);
+        PreparedStatement statement = Mockito.mock(PreparedStatement.class);
+        Mockito.when(connection.prepareStatement(Mockito.anyString())).thenReturn(statement);
+        Mockito.when(connection.prepareStatement(Mockito.anyString(), Mockito.anyInt(), Mockito.anyInt())).thenReturn(statement);
+        Mockito.when(connection.isValid(Mockito.anyInt())).thenReturn(true);
+        Mockito.when(statement.executeQuery()).thenAnswer(invocation -> resultSet(ids));
+        statements.put(connection, statement);
+        return connection;
+    }
+
+    private static ResultSet resultSet(Long... ids) throws SQLException {
+        ResultSet rs = Mockito.mock(ResultSet.class);
+        AtomicInteger row = new AtomicInteger(-1);
+        Mockito.when(rs.next()).thenAnswer(invocation -> row.incrementAndGet() < ids.length);
+        Mockito.when(rs.getLong("id")).thenAnswer(invocation -> ids[row.get()]);
+        return rs;
+    }
+
+    private static Long id(ResultSet rs) {
+        try {
+            return rs.getLong("id");
+        }
+        catch (SQLException e) {
+            throw new RuntimeException("Failed to map ResultSet row to id", e);
+        }
+    }
+}
@@ -0,0 +1,129 @@
+/*
+ * Copyright (C) 2026 DANS - Data Archiving and Networked Services (info@dans.knaw.nl)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.knaw.dans.dvcli.command;
+
+import org.junit.jupiter.api.Test;
+import picocli.CommandLine;
+import picocli.CommandLine.Command;
+import picocli.CommandLine.Parameters;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+public class ScriptRunnerTest {
+
+    @Test
+    public void tokenize_splits_on_whitespace_and_honours_quotes() {
+        assertThat(ScriptRunner.tokenize("  banner-add -m 'Maintenance tonight'  -l en"))
+            .containsExactly("banner-add", "-m", "Maintenance tonight", "-l", "en");
+        assertThat(ScriptRunner.tokenize("dataset-lock-add \"doi:10.5072/FK2/\\\"X\\\"\" Ingest"))
+            .containsExactly("dataset-lock-add", "doi:10.5072/FK2/\"X\"", "Ingest");
+        assertThat(ScriptRunner.tokenize("a\\ b ''")).containsExactly("a b", "");
+    }
+
+    @Test
+    public void tokenize_ignores_comments_and_empty_lines() {
+        assertThat(ScriptRunner.tokenize("   ")).isEmpty();
+        assertThat(ScriptRunner.tokenize("# banner-list")).isEmpty();
+        assertThat(ScriptRunner.tokenize("banner-list # all banners")).containsExactly("banner-list");
+        assertThat(ScriptRunner.tokenize("banner-delete a#1")).containsExactly("banner-delete", "a#1");
+    }
+
+    @Test
+    public void tokenize_rejects_unterminated_quotes() {
+        assertThatThrownBy(() -> ScriptRunner.tokenize("banner-add -m 'oops"))
+            .isInstanceOf(IllegalArgumentException.class);
+        assertThatThrownBy(() -> ScriptRunner.tokenize("banner-add -m \"oops"))
+            .isInstanceOf(IllegalArgumentException.class);
+    }
+
+    @Command(name = "dv")
+    static class Root {
+    }
+
+    @Command(name = "read-pids")
+    static class ReadPids implements Callable<Integer> {
+        private final List<List<String>> read;
+
+        @Parameters(index = "0")
+        private String inputFile;
+
+        ReadPids(List<List<String>> read) {
+            this.read = read;
+        }
+
+        @Override
+        public Integer call() throws Exception {
+            read.add(AbstractBulkDatasetCmd.readPids(inputFile));
+            return 0;
+        }
+    }
+
+    /**
+     * Like a real stdin, it cannot be read anymore once it is closed.
+     */
+    static class CloseTrackingInputStream extends ByteArrayInputStream {
+        private boolean closed;
+
+        CloseTrackingInputStream(String content) {
+            super(content.getBytes(StandardCharsets.UTF_8));
+        }
+
+        @Override
+        public synchronized int read(byte[] b, int off, int len) {
+            if (closed) {
+                throw new IllegalStateException("Stream closed");
+            }
+            return super.read(b, off, len);
+        }
+
+        @Override
+        public void close() throws IOException {
+            closed = true;
+        }
+    }
+
+    @Test
+    public void shell_keeps_stdin_open_when_a_command_reads_pids_from_stdin() throws Exception {
+        InputStream originalIn = System.in;
+        PrintStream originalOut = System.out;
+        PrintStream originalErr = System.err;
+        var stdin = new CloseTrackingInputStream("read-pids -\nread-pids -\n");
+        List<List<String>> read = new ArrayList<>();
+        try {
+            System.setIn(stdin);
+            var shell = new Shell(() -> new CommandLine(new Root()).addSubcommand(new CommandLine(new ReadPids(read))));
+
+            assertThat(shell.call()).isZero();
+            assertThat(stdin.closed).isFalse();
+            assertThat(read).hasSize(2);
+        }
+        finally {
+            System.setIn(originalIn);
+            System.setOut(originalOut);
+            System.setErr(originalErr);
+        }
+    }
+}
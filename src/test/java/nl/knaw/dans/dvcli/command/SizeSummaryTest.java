@@ -0,0 +1,63 @@
+/*
+ * Copyright (C) 2026 DANS - Data Archiving and Networked Services (info@dans.knaw.nl)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.knaw.dans.dvcli.command;
+
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.within;
+
+public class SizeSummaryTest {
+
+    @Test
+    public void quantiles_are_within_relative_accuracy() {
+        var summary = new SizeSummary(0);
+        for (int i = 1; i <= 100_000; i++) {
+            summary.add("item-" + i, i);
+        }
+
+        assertThat(summary.getCount()).isEqualTo(100_000);
+        assertThat(summary.getTotal()).isEqualTo(5_000_050_000L);
+        assertThat((double) summary.getQuantile(0.5)).isCloseTo(50_000, within(500.0));
+        assertThat((double) summary.getQuantile(0.9)).isCloseTo(90_000, within(900.0));
+        assertThat((double) summary.getQuantile(0.99)).isCloseTo(99_000, within(990.0));
+    }
+
+    @Test
+    public void merged_summary_keeps_largest_items_of_both() {
+        var left = new SizeSummary(2);
+        left.add("a", 10);
+        left.add("b", 300);
+        left.add("c", 0);
+        var right = new SizeSummary(2);
+        right.add("d", 200);
+        right.add("e", 20);
+
+        left.merge(right);
+
+        assertThat(left.getCount()).isEqualTo(5);
+        assertThat(left.getTotal()).isEqualTo(530);
+        assertThat(left.getLargest()).extracting(SizeSummary.Item::getLabel).containsExactly("b", "d");
+        assertThat(left.getQuantile(0)).isEqualTo(0);
+    }
+
+    @Test
+    public void formatSize_uses_binary_units() {
+        assertThat(SizeSummary.formatSize(1023)).isEqualTo("1023 B");
+        assertThat(SizeSummary.formatSize(1536)).isEqualTo(String.format("%.1f KiB", 1.5));
+        assertThat(SizeSummary.formatSize(5L * 1024 * 1024 * 1024)).isEqualTo(String.format("%.1f GiB", 5.0));
+    }
+}
@@ -0,0 +1,103 @@
+/*
+ * Copyright (C) 2026 DANS - Data Archiving and Networked Services (info@dans.knaw.nl)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.knaw.dans.dvcli.command;
+
+import org.junit.jupiter.api.Test;
+import org.mockito.Mockito;
+
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class StorageSizeBreakdownTest {
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void datasets_are_streamed_in_query_order_and_rolled_up_into_their_ancestor_collections() throws Exception {
+        List<ResultSet> collections = List.of(
+            collection(1, null, "root"),
+            collection(2, 1L, "a"),
+            collection(3, 2L, "b"));
+        List<ResultSet> usage = List.of(
+            usage(10, 3L, "FK2/A", "file", 100, 2),
+            usage(10, 3L, "FK2/A", "s3", 50, 1),
+            usage(11, 2L, "FK2/B", "(default)", 10, 1),
+            usage(12, 1L, "FK2/C", null, 0, 0));
+        PooledDatabase dbApi = Mockito.mock(PooledDatabase.class);
+        Mockito.when(dbApi.query(Mockito.anyString(), Mockito.any())).thenAnswer(invocation -> {
+            String sql = invocation.getArgument(0);
+            Function<ResultSet, Object> mapper = invocation.getArgument(1);
+            PooledDatabase.Query<Object> query = Mockito.mock(PooledDatabase.Query.class);
+            List<ResultSet> rows = sql.contains("FROM dataverse dv") ? collections : usage;
+            Mockito.when(query.stream(Mockito.any(), Mockito.any())).thenAnswer(streamInvocation -> {
+                PooledDatabase.RowConsumer<Object> consumer = streamInvocation.getArgument(1);
+                for (ResultSet rs : rows) {
+                    consumer.accept(mapper.apply(rs));
+                }
+                return (long) rows.size();
+            });
+            return query;
+        });
+        List<String> datasets = new ArrayList<>();
+
+        var breakdown = StorageSizeBreakdown.fetch(dbApi, dataset -> datasets.add(dataset.getPid() + "," + dataset.getStorage() + "," + dataset.getFiles()));
+
+        assertThat(datasets).containsExactly("doi:10.5072/FK2/A,150,3", "doi:10.5072/FK2/B,10,1", "doi:10.5072/FK2/C,0,0");
+
+        var collectionReport = new StringWriter();
+        breakdown.writeCollectionReport(new PrintWriter(collectionReport), storage -> storage);
+        assertThat(collectionReport.toString().lines()).containsExactly(
+            "ALIAS,PARENT_ALIAS,STORAGE,FILES,DATASETS",
+            "a,root,160,4,2",
+            "b,a,150,3,1",
+            "root,,160,4,3");
+
+        var driverReport = new StringWriter();
+        breakdown.writeDriverReport(new PrintWriter(driverReport), storage -> storage, Map.of("file", "File", "s3", "S3"), "file");
+        assertThat(driverReport.toString().lines()).containsExactly(
+            "DRIVER,DRIVER_ID,STORAGE,FILES,DATASETS",
+            "File,file,110,3,2",
+            "S3,s3,50,1,1");
+    }
+
+    private static ResultSet collection(long id, Long ownerId, String alias) throws SQLException {
+        ResultSet rs = Mockito.mock(ResultSet.class);
+        Mockito.when(rs.getLong("id")).thenReturn(id);
+        Mockito.when(rs.getObject("owner_id", Long.class)).thenReturn(ownerId);
+        Mockito.when(rs.getString("alias")).thenReturn(alias);
+        return rs;
+    }
+
+    private static ResultSet usage(long datasetId, Long ownerId, String identifier, String driver, long storage, long files) throws SQLException {
+        ResultSet rs = Mockito.mock(ResultSet.class);
+        Mockito.when(rs.getLong("dataset_id")).thenReturn(datasetId);
+        Mockito.when(rs.getObject("owner_id", Long.class)).thenReturn(ownerId);
+        Mockito.when(rs.getString("protocol")).thenReturn("doi");
+        Mockito.when(rs.getString("authority")).thenReturn("10.5072");
+        Mockito.when(rs.getString("identifier")).thenReturn(identifier);
+        Mockito.when(rs.getString("driver")).thenReturn(driver);
+        Mockito.when(rs.getLong("STORAGE")).thenReturn(storage);
+        Mockito.when(rs.getLong("FILES")).thenReturn(files);
+        return rs;
+    }
+}
@@ -0,0 +1,144 @@
+/*
+ * Copyright (C) 2026 DANS - Data Archiving and Networked Services (info@dans.knaw.nl)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.knaw.dans.dvcli.command;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.mockito.Mockito;
+
+import java.nio.file.Path;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class StorageSizeCacheTest {
+    private final PooledDatabase dbApi = Mockito.mock(PooledDatabase.class);
+
+    // The datasets in the database: id -> identifier, number of versions, last update time and storage size
+    private final Map<Long, Object[]> datasets = new LinkedHashMap<>();
+    // The ids of the datasets for which the aggregates were queried, per refresh
+    private final List<List<Long>> aggregated = new ArrayList<>();
+
+    @BeforeEach
+    @SuppressWarnings("unchecked")
+    public void setUp() throws Exception {
+        Mockito.when(dbApi.query(Mockito.anyString(), Mockito.any())).thenAnswer(invocation -> {
+            String sql = invocation.getArgument(0);
+            Function<ResultSet, Object> mapper = invocation.getArgument(1);
+            PooledDatabase.Query<Object> query = Mockito.mock(PooledDatabase.Query.class);
+            Mockito.when(query.executeFor(Mockito.any())).thenAnswer(executeInvocation -> {
+                List<Object> rows = new ArrayList<>();
+                if (sql.contains("LASTUPDATETIME")) {
+                    for (var dataset : datasets.entrySet()) {
+                        rows.add(mapper.apply(state(dataset.getKey(), dataset.getValue())));
+                    }
+                }
+                else {
+                    List<Object[]> parameterSets = executeInvocation.getArgument(0);
+                    List<Long> ids = Arrays.asList((Long[]) parameterSets.get(0)[0]);
+                    aggregated.add(ids);
+                    for (Long id : ids) {
+                        long storage = (long) datasets.get(id)[3];
+                        rows.add(mapper.apply(aggregate(id, storage)));
+                    }
+                }
+                return rows;
+            });
+            return query;
+        });
+    }
+
+    @Test
+    public void refresh_recomputes_only_new_and_changed_datasets_and_drops_deleted_ones(@TempDir Path tempDir) throws Exception {
+        Path file = tempDir.resolve("storage-size-cache.csv");
+        datasets.put(1L, new Object[] { "FK2/A", 1L, "2026-01-01T00:00:00Z", 100L });
+        datasets.put(2L, new Object[] { "FK2/B", 1L, "2026-01-01T00:00:00Z", 200L });
+        datasets.put(3L, new Object[] { "FK2/C", 2L, "2026-01-02T00:00:00Z", 300L });
+        datasets.put(4L, new Object[] { "FK2/D", 1L, "2026-01-01T00:00:00Z", 400L });
+        var cache = StorageSizeCache.load(file);
+        cache.refresh(dbApi);
+        cache.save();
+        assertThat(aggregated).hasSize(1);
+        assertThat(aggregated.get(0)).containsExactlyInAnyOrder(1L, 2L, 3L, 4L);
+
+        // A new version of 1, an update of the latest version of 2, a new PID for 3, 4 deleted and 5 created
+        datasets.put(1L, new Object[] { "FK2/A", 2L, "2026-01-01T00:00:00Z", 150L });
+        datasets.put(2L, new Object[] { "FK2/B", 1L, "2026-02-01T00:00:00Z", 250L });
+        datasets.put(3L, new Object[] { "FK2/C2", 2L, "2026-01-02T00:00:00Z", 300L });
+        datasets.remove(4L);
+        datasets.put(5L, new Object[] { "FK2/E", 1L, "2026-02-01T00:00:00Z", 500L });
+        aggregated.clear();
+        var reloaded = StorageSizeCache.load(file);
+        assertThat(reloaded.getEntries()).hasSize(4);
+        reloaded.refresh(dbApi);
+
+        assertThat(aggregated).hasSize(1);
+        assertThat(aggregated.get(0)).containsExactlyInAnyOrder(1L, 2L, 3L, 5L);
+        assertThat(reloaded.getEntries())
+            .extracting(e -> e.getId() + "," + e.getPid() + "," + e.getStorage())
+            .containsExactlyInAnyOrder(
+                "1,doi:10.5072/FK2/A,150",
+                "2,doi:10.5072/FK2/B,250",
+                "3,doi:10.5072/FK2/C2,300",
+                "5,doi:10.5072/FK2/E,500");
+    }
+
+    @Test
+    public void refresh_of_an_up_to_date_cache_does_not_query_aggregates(@TempDir Path tempDir) throws Exception {
+        Path file = tempDir.resolve("storage-size-cache.csv");
+        datasets.put(1L, new Object[] { "FK2/A", 1L, "2026-01-01T00:00:00Z", 100L });
+        datasets.put(2L, new Object[] { "FK2/B", 3L, null, 200L });
+        var cache = StorageSizeCache.load(file);
+        cache.refresh(dbApi);
+        cache.save();
+        aggregated.clear();
+
+        var reloaded = StorageSizeCache.load(file);
+        reloaded.refresh(dbApi);
+
+        assertThat(aggregated).isEmpty();
+        assertThat(reloaded.getEntries()).extracting(StorageSizeCache.Entry::getStorage).containsExactlyInAnyOrder(100L, 200L);
+    }
+
+    private static ResultSet state(long id, Object[] dataset) throws SQLException {
+        ResultSet rs = Mockito.mock(ResultSet.class);
+        Mockito.when(rs.getLong("id")).thenReturn(id);
+        Mockito.when(rs.getString("protocol")).thenReturn("doi");
+        Mockito.when(rs.getString("authority")).thenReturn("10.5072");
+        Mockito.when(rs.getString("identifier")).thenReturn((String) dataset[0]);
+        Mockito.when(rs.getLong("VERSIONS")).thenReturn((Long) dataset[1]);
+        Mockito.when(rs.getTimestamp("LASTUPDATETIME")).thenReturn(dataset[2] != null ? Timestamp.from(Instant.parse((String) dataset[2])) : null);
+        return rs;
+    }
+
+    private static ResultSet aggregate(long id, long storage) throws SQLException {
+        ResultSet rs = Mockito.mock(ResultSet.class);
+        Mockito.when(rs.getLong("dataset_id")).thenReturn(id);
+        Mockito.when(rs.getLong("STORAGE")).thenReturn(storage);
+        Mockito.when(rs.getLong("FILES")).thenReturn(1L);
+        return rs;
+    }
+}
@@ -0,0 +1,60 @@
+/*
+ * Copyright (C) 2026 DANS - Data Archiving and Networked Services (info@dans.knaw.nl)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.knaw.dans.dvcli.command;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class StorageUsageCacheTest {
+    private static final String BASE_URL = "https://dataverse.example.org";
+    private static final long HOUR = TimeUnit.HOURS.toMillis(1);
+
+    @Test
+    public void sizes_are_kept_between_runs_per_instance(@TempDir Path tempDir) throws Exception {
+        Path file = tempDir.resolve("storage-usage-cache.json");
+        var cache = StorageUsageCache.load(file, BASE_URL, HOUR);
+        assertThat(cache.getSize("root")).isNull();
+        cache.putSize("root", 1234L);
+        cache.save();
+        var other = StorageUsageCache.load(file, "https://other.example.org", HOUR);
+        other.putSize("root", 5L);
+        other.save();
+
+        assertThat(StorageUsageCache.load(file, BASE_URL, HOUR).getSize("root")).isEqualTo(1234L);
+        assertThat(StorageUsageCache.load(file, "https://other.example.org", HOUR).getSize("root")).isEqualTo(5L);
+    }
+
+    @Test
+    public void expired_sizes_are_treated_as_missing(@TempDir Path tempDir) throws Exception {
+        Path file = tempDir.resolve("storage-usage-cache.json");
+        var cache = StorageUsageCache.load(file, BASE_URL, HOUR);
+        cache.putSize("root", 1234L);
+        cache.save();
+
+        var expired = StorageUsageCache.load(file, BASE_URL, 0);
+
+        assertThat(expired.getSize("root")).isNull();
+        assertThat(expired.getTree()).isNull();
+        expired.putSize("root", 2000L);
+        assertThat(expired.getSize("root")).isNull();
+        assertThat(StorageUsageCache.load(file, BASE_URL, HOUR).getSize("root")).isEqualTo(1234L);
+    }
+}
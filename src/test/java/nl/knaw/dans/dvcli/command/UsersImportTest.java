@@ -0,0 +1,257 @@
+/*
+ * Copyright (C) 2026 DANS - Data Archiving and Networked Services (info@dans.knaw.nl)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.knaw.dans.dvcli.command;
+
+import nl.knaw.dans.lib.dataverse.DataverseClient;
+import nl.knaw.dans.lib.dataverse.DataverseHttpResponse;
+import nl.knaw.dans.lib.dataverse.model.user.BuiltinUser;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.mockito.Mockito;
+import picocli.CommandLine;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class UsersImportTest {
+    private static final String KEY = "s3cret";
+    private static final String HEADER = "Username,GivenName,FamilyName,Email,Affiliation,Password";
+
+    @TempDir
+    Path tempDir;
+
+    private final DataverseClient client = Mockito.mock(DataverseClient.class, Mockito.RETURNS_DEEP_STUBS);
+    private final PooledDatabase dbApi = Mockito.mock(PooledDatabase.class);
+    private final List<String> existingUsers = new ArrayList<>();
+    private final List<String> sent = new CopyOnWriteArrayList<>();
+    private final Map<String, Integer> statusCodes = new ConcurrentHashMap<>();
+    private final AtomicInteger inFlight = new AtomicInteger();
+    private final AtomicInteger maxInFlight = new AtomicInteger();
+
+    @BeforeEach
+    @SuppressWarnings("unchecked")
+    public void setUp() throws Exception {
+        Mockito.when(dbApi.query(Mockito.anyString(), Mockito.any())).thenAnswer(invocation -> {
+            Function<ResultSet, Object> mapper = invocation.getArgument(1);
+            PooledDatabase.Query<Object> query = Mockito.mock(PooledDatabase.Query.class);
+            List<Object> rows = new ArrayList<>();
+            for (String user : existingUsers) {
+                String[] fields = user.split(",", -1);
+                rows.add(mapper.apply(existingUser(fields[0], fields[1])));
+            }
+            Mockito.when(query.executeFor(Mockito.any())).thenReturn(rows);
+            return query;
+        });
+        var ok = response(200);
+        var rejected = response(400);
+        // Each create call takes a while, so that calls of several threads overlap
+        Mockito.when(client.builtinUsers(KEY).create(Mockito.any(), Mockito.anyString())).thenAnswer(invocation -> {
+            BuiltinUser user = invocation.getArgument(0);
+            sent.add(user.getUserName());
+            maxInFlight.accumulateAndGet(inFlight.incrementAndGet(), Math::max);
+            try {
+                Thread.sleep(50);
+            }
+            finally {
+                inFlight.decrementAndGet();
+            }
+            int statusCode = statusCodes.getOrDefault(user.getUserName(), 200);
+            if (statusCode < 0) {
+                throw new IOException("Connection reset");
+            }
+            return statusCode == 200 ? ok : rejected;
+        });
+    }
+
+    @Test
+    public void users_are_created_concurrently_and_each_user_of_the_csv_once() throws Exception {
+        existingUsers.add("old,old@example.com");
+        Path csv = writeCsv(
+            user("u1", "u1@example.com"),
+            user("u2", "u2@example.com"),
+            user("old", "new@example.com"),
+            user("u3", "OLD@example.com"),
+            user("u4", "u4@example.com"),
+            user("U1", "other@example.com"),
+            user("u5", "u4@example.com"),
+            user("u6", "u6@example.com"),
+            user("u7", "u7@example.com"));
+        Path report = tempDir.resolve("report.csv");
+
+        int exitCode = execute("-i", csv.toString(), "-k", KEY, "-c", "4", "-r", report.toString());
+
+        assertThat(exitCode).isZero();
+        assertThat(sent).containsExactlyInAnyOrder("u1", "u2", "u4", "u6", "u7");
+        assertThat(maxInFlight.get()).isBetween(2, 4);
+        assertThat(Files.readAllLines(report)).first().isEqualTo("USERNAME,EMAIL,OUTCOME,MESSAGE");
+        assertThat(Files.readAllLines(report)).hasSize(10).contains(
+            "u1,u1@example.com,CREATED,",
+            "old,new@example.com,EXISTS,",
+            "u3,OLD@example.com,EXISTS,",
+            "U1,other@example.com,DUPLICATE,",
+            "u5,u4@example.com,DUPLICATE,");
+    }
+
+    @Test
+    public void import_fails_when_a_user_is_rejected_or_cannot_be_created() throws Exception {
+        statusCodes.put("u2", 400);
+        statusCodes.put("u3", -1);
+        Path csv = writeCsv(user("u1", "u1@example.com"), user("u2", "u2@example.com"), user("u3", "u3@example.com"));
+        Path report = tempDir.resolve("report.csv");
+
+        int exitCode = execute("-i", csv.toString(), "-k", KEY, "-c", "2", "-r", report.toString());
+
+        assertThat(exitCode).isEqualTo(1);
+        assertThat(Files.readAllLines(report)).containsExactlyInAnyOrder(
+            "USERNAME,EMAIL,OUTCOME,MESSAGE",
+            "u1,u1@example.com,CREATED,",
+            "u2,u2@example.com,REJECTED,HTTP 400",
+            "u3,u3@example.com,ERROR,Connection reset");
+    }
+
+    @Test
+    public void max_rate_spaces_out_the_create_calls() throws Exception {
+        Path csv = writeCsv(user("u1", "u1@example.com"), user("u2", "u2@example.com"), user("u3", "u3@example.com"), user("u4", "u4@example.com"));
+        long start = System.nanoTime();
+
+        assertThat(execute("-i", csv.toString(), "-k", KEY, "-c", "4", "--max-rate", "10")).isZero();
+
+        // Four calls at ten per second start at least 300 ms apart from first to last
+        assertThat(System.nanoTime() - start).isGreaterThanOrEqualTo(300_000_000L);
+        assertThat(sent).hasSize(4);
+    }
+
+    @Test
+    public void existing_users_are_skipped_without_a_create_call() throws Exception {
+        existingUsers.add("Alice,alice@example.com");
+        existingUsers.add("noemail,");
+        Path csv = writeCsv(user("alice", "a@example.com"), user("bob", "ALICE@example.com"), user("carol", ""), user("noEmail", "n@example.com"));
+        Path report = tempDir.resolve("report.csv");
+
+        assertThat(execute("-i", csv.toString(), "-k", KEY, "-r", report.toString())).isZero();
+
+        assertThat(sent).containsExactly("carol");
+        assertThat(Files.readAllLines(report)).containsExactlyInAnyOrder(
+            "USERNAME,EMAIL,OUTCOME,MESSAGE",
+            "alice,a@example.com,EXISTS,",
+            "bob,ALICE@example.com,EXISTS,",
+            "carol,,CREATED,",
+            "noEmail,n@example.com,EXISTS,");
+    }
+
+    @Test
+    public void resume_skips_the_users_that_the_journal_records_as_created_or_existing() throws Exception {
+        Path journal = tempDir.resolve("journal.csv");
+        // The last record was cut off when the previous run was killed
+        Files.writeString(journal, "USERNAME,OUTCOME,MESSAGE,TIMESTAMP\r\n"
+            + "u1,CREATED,,2026-01-01T00:00:00Z\r\n"
+            + "u2,EXISTS,,2026-01-01T00:00:01Z\r\n"
+            + "u3,REJECTED,HTTP 400,2026-01-01T00:00:02Z\r\n"
+            + "u4,ERROR,Connection reset,2026-01-01T00:00:03Z\r\n"
+            + "u5,CREA");
+        Path csv = writeCsv(user("u1", "u1@example.com"), user("u2", "u2@example.com"), user("u3", "u3@example.com"), user("u4", "u4@example.com"),
+            user("u5", "u5@example.com"));
+        Path report = tempDir.resolve("report.csv");
+
+        assertThat(execute("-i", csv.toString(), "-k", KEY, "-j", journal.toString(), "--resume", "-r", report.toString())).isZero();
+
+        assertThat(sent).containsExactlyInAnyOrder("u3", "u4", "u5");
+        assertThat(Files.readAllLines(report)).contains("u1,u1@example.com,ALREADY_IMPORTED,", "u2,u2@example.com,ALREADY_IMPORTED,");
+        List<String> journalLines = Files.readAllLines(journal);
+        assertThat(journalLines).hasSize(9);
+        assertThat(journalLines.get(5)).isEqualTo("u5,CREA");
+        assertThat(journalLines.subList(6, 9)).allMatch(line -> line.matches("u[345],CREATED,,.*"));
+    }
+
+    @Test
+    public void journal_header_is_written_only_once() throws Exception {
+        Path journal = tempDir.resolve("journal.csv");
+        Path csv = writeCsv(user("u1", "u1@example.com"), user("u2", "u2@example.com"));
+        statusCodes.put("u2", 400);
+
+        assertThat(execute("-i", csv.toString(), "-k", KEY, "-j", journal.toString())).isEqualTo(1);
+        statusCodes.clear();
+        assertThat(execute("-i", csv.toString(), "-k", KEY, "-j", journal.toString(), "--resume")).isZero();
+
+        assertThat(sent).containsExactly("u1", "u2", "u2");
+        List<String> journalLines = Files.readAllLines(journal);
+        assertThat(journalLines).hasSize(4);
+        assertThat(journalLines.get(0)).isEqualTo("USERNAME,OUTCOME,MESSAGE,TIMESTAMP");
+        assertThat(journalLines.subList(1, 4)).noneMatch(line -> line.startsWith("USERNAME"));
+        assertThat(journalLines.get(3)).startsWith("u2,CREATED,,");
+    }
+
+    @Test
+    public void resume_requires_a_journal() throws Exception {
+        Path csv = writeCsv(user("u1", "u1@example.com"));
+
+        assertThat(execute("-i", csv.toString(), "-k", KEY, "--resume")).isEqualTo(1);
+
+        assertThat(sent).isEmpty();
+    }
+
+    @Test
+    public void dry_run_does_not_create_users() throws Exception {
+        Path csv = writeCsv(user("u1", "u1@example.com"), user("u1", "u1@example.com"));
+
+        assertThat(execute("-i", csv.toString(), "-k", KEY, "--dry-run")).isZero();
+
+        assertThat(sent).isEmpty();
+    }
+
+    private int execute(String... args) {
+        return new CommandLine(new UsersImport(client, dbApi)).execute(args);
+    }
+
+    private Path writeCsv(String... users) throws IOException {
+        Path csv = tempDir.resolve("users.csv");
+        List<String> lines = new ArrayList<>();
+        lines.add(HEADER);
+        lines.addAll(List.of(users));
+        Files.write(csv, lines);
+        return csv;
+    }
+
+    private static String user(String userName, String email) {
+        return String.join(",", userName, "Given", "Family", email, "DANS", "password");
+    }
+
+    private static DataverseHttpResponse<?> response(int statusCode) {
+        DataverseHttpResponse<?> response = Mockito.mock(DataverseHttpResponse.class, Mockito.RETURNS_DEEP_STUBS);
+        Mockito.when(response.getHttpResponse().getCode()).thenReturn(statusCode);
+        return response;
+    }
+
+    private static ResultSet existingUser(String userIdentifier, String email) throws SQLException {
+        ResultSet rs = Mockito.mock(ResultSet.class);
+        Mockito.when(rs.getString("useridentifier")).thenReturn(userIdentifier);
+        Mockito.when(rs.getString("email")).thenReturn(email);
+        return rs;
+    }
+}
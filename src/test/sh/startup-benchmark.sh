@@ -0,0 +1,51 @@
+#!/usr/bin/env bash
+#
+# Copyright (C) 2026 DANS - Data Archiving and Networked Services (info@dans.knaw.nl)
+#
+# Licensed under the Apache License, Version 2.0 (the "License");
+# you may not use this file except in compliance with the License.
+# You may obtain a copy of the License at
+#
+# http://www.apache.org/licenses/LICENSE-2.0
+#
+# Unless required by applicable law or agreed to in writing, software
+# distributed under the License is distributed on an "AS IS" BASIS,
+# WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+# See the License for the specific language governing permissions and
+# limitations under the License.
+#
+
+# Measures the time from starting dv until its first line of output, for a few representative commands. Run it from the root of the project after `mvn package`. The commands connect to the
+# Dataverse instance and database in the configuration file, so use a test instance.
+#
+# Environment variables:
+#   DV_CONFIG  configuration file (default: src/test/resources/debug-etc/config.yml)
+#   RUNS       number of runs per command (default: 5)
+#   JAVA_OPTS  extra JVM options, e.g. to compare with and without a class-data-sharing archive
+
+CONFIG=${DV_CONFIG:-src/test/resources/debug-etc/config.yml}
+RUNS=${RUNS:-5}
+JAR=$(ls target/dd-dv-cli-*.jar 2> /dev/null | grep -v -e sources -e javadoc | head -1)
+
+if [ -z "$JAR" ]; then
+    echo "No jar found in target; run mvn package first"
+    exit 1
+fi
+
+time_to_first_output() {
+    local start
+    start=$(date +%s%N)
+    java $JAVA_OPTS -Ddans.default.config=$CONFIG -jar $JAR "$@" 2>&1 < /dev/null | {
+        read -r _
+        echo $(( ($(date +%s%N) - start) / 1000000 ))
+        cat > /dev/null
+    }
+}
+
+for COMMAND in "--help" "banner-list" "datasets-get-published"; do
+    TOTAL=0
+    for i in $(seq $RUNS); do
+        TOTAL=$(( TOTAL + $(time_to_first_output $COMMAND) ))
+    done
+    printf "%-30s %6d ms (mean of %d runs)\n" "dv $COMMAND" $(( TOTAL / RUNS )) $RUNS
+done